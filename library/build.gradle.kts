@@ -25,6 +25,11 @@ android {
         sourceCompatibility = JavaVersion.VERSION_17
         targetCompatibility = JavaVersion.VERSION_17
     }
+
+    // the JVM tests use classes logging with android.util.Log (e.g. the ContactSnapshot)
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -36,6 +41,8 @@ dependencies {
     implementation("xyz.danoz:recyclerviewfastscroller:_") {
         exclude(group = "com.android.support", module = "support-v4")
     }
+
+    testImplementation("junit:junit:_")
 }
 
 tasks {
@@ -17,6 +17,8 @@
 package com.onegravity.contactpicker;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -33,15 +35,52 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.greenrobot.eventbus.EventBus;
 
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Super class of ContactFragment / GroupFragment to take care of common tasks.
+ *
+ * The elements are filtered on a background thread. Typing is debounced (a query is searched
+ * once the query text hasn't changed for SEARCH_DELAY_MS), a new query cancels the previous
+ * search and only the result of the latest query is delivered to onFilteringDone.
  */
-public abstract class BaseFragment extends Fragment implements SearchView.OnQueryTextListener {
+public abstract class BaseFragment<E extends ContactElement> extends Fragment implements SearchView.OnQueryTextListener {
+
+    private static final long SEARCH_DELAY_MS = 150;
+
+    /*
+     * A single search thread shared by all fragments.
+     */
+    private static final ExecutorService sSearchExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     private String[] mQueryStrings;
 
+    /*
+     * Incremented with each search so results of outdated searches can be discarded.
+     */
+    private int mSearchGeneration;
+    private Runnable mPendingSearch;
+    private Future<?> mRunningSearch;
+
+    /*
+     * The result of the latest search, a new search extending its query narrows it down.
+     */
+    private SearchIndex<E>.Result mLastResult;
+
+    /*
+     * The search index of the elements (only accessed by the search thread).
+     */
+    private SearchIndex<E> mSearchIndex;
+
+    /*
+     * True if the search keys of the elements have changed and the index must be built again.
+     */
+    private volatile boolean mSearchIndexStale;
+
     private RecyclerView mRecyclerView;
     private View mFastScroll;
     private View mSectionIndex;
@@ -110,9 +149,7 @@ public abstract class BaseFragment extends Fragment implements SearchView.OnQuer
 
         EventBus.getDefault().register(this);
 
-        if (mQueryStrings != null && mQueryStrings.length > 0) {
-            performFiltering(mQueryStrings);
-        }
+        refilter();
     }
 
     @Override
@@ -122,6 +159,13 @@ public abstract class BaseFragment extends Fragment implements SearchView.OnQuer
         EventBus.getDefault().unregister(this);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        cancelSearch();
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -145,24 +189,168 @@ public abstract class BaseFragment extends Fragment implements SearchView.OnQuer
 
     @Override
     final public boolean onQueryTextSubmit(String query) {
-        return onQuery(query);
+        return onQuery(query, 0);
     }
 
     @Override
     final public boolean onQueryTextChange(String query) {
-        return onQuery(query);
+        return onQuery(query, SEARCH_DELAY_MS);
+    }
+
+    private boolean onQuery(String query, long delayMs) {
+        String queryString = Helper.normalizeForSearch(query);
+        mQueryStrings = queryString.isEmpty() ? new String[0] : queryString.split(" ");
+        for (int i = 0; i < mQueryStrings.length; i++) {
+            mQueryStrings[i] = normalizeQueryString(mQueryStrings[i]);
+        }
+        if (hasQuery()) {
+            search(delayMs);
+        }
+        else {
+            cancelSearch();
+            mLastResult = null;
+            onFilteringDone(getElements());
+        }
+        return true;
+    }
+
+    private boolean hasQuery() {
+        return mQueryStrings != null && mQueryStrings.length > 0;
     }
 
-    private boolean onQuery(String query) {
-        String queryString = query.toLowerCase(Locale.getDefault());
-        mQueryStrings = queryString.split(" ");
-        performFiltering(mQueryStrings);
+    /**
+     * Filter the elements again (e.g. because they have changed).
+     *
+     * @return True if there's a query and the filtered elements will be delivered to
+     * onFilteringDone, False if there's nothing to filter.
+     */
+    protected final boolean refilter() {
+        if (! hasQuery()) {
+            cancelSearch();
+            return false;
+        }
+
+        search(0);
         return true;
     }
 
+    private void search(long delayMs) {
+        cancelSearch();
+
+        final List<? extends E> elements = getElements();
+        if (elements == null) return;
+
+        final int generation = mSearchGeneration;
+        final String[] queryStrings = mQueryStrings;
+        final SearchIndex<E>.Result previous = mLastResult;
+        mPendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                mPendingSearch = null;
+                mRunningSearch = sSearchExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        final SearchIndex<E>.Result result = search(elements, queryStrings, previous);
+                        if (result == null) return;
+
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (generation == mSearchGeneration) {
+                                    mRunningSearch = null;
+                                    mLastResult = result;
+                                    onFilteringDone(result);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        };
+        mHandler.postDelayed(mPendingSearch, delayMs);
+    }
+
+    /**
+     * Runs on the search thread.
+     */
+    private SearchIndex<E>.Result search(List<? extends E> elements, String[] queryStrings,
+                                         SearchIndex<E>.Result previous) {
+        if (mSearchIndex == null || ! mSearchIndex.isFor(elements) || mSearchIndexStale) {
+            mSearchIndexStale = false;
+            SearchMode mode = getSearchMode();
+            String[] keys = new String[elements.size()];
+            for (int e = 0; e < keys.length; e++) {
+                keys[e] = getSearchKey(elements.get(e));
+            }
+            int[] boosts = mode == SearchMode.RANKED ? getSearchBoosts(elements) : null;
+            mSearchIndex = new SearchIndex<>(elements, keys, boosts, mode);
+        }
+        return mSearchIndex.search(queryStrings, previous);
+    }
+
+    /**
+     * Cancel the pending or running search, its result won't be delivered.
+     */
+    private void cancelSearch() {
+        mSearchGeneration++;
+        if (mPendingSearch != null) {
+            mHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+        if (mRunningSearch != null) {
+            mRunningSearch.cancel(true);
+            mRunningSearch = null;
+        }
+    }
+
+    /**
+     * Build the search index again with the next search (e.g. because the elements' search keys
+     * have changed while the list is still the same).
+     */
+    protected final void invalidateSearchIndex() {
+        mSearchIndexStale = true;
+    }
+
+    /**
+     * @return how the query strings are matched against the search keys (called on the search
+     * thread).
+     */
+    protected SearchMode getSearchMode() {
+        return SearchMode.NAME;
+    }
+
+    /**
+     * @return the key an element is searched by (called on the search thread).
+     */
+    protected String getSearchKey(E element) {
+        return Helper.normalizeForSearch(element.getDisplayName());
+    }
+
+    /**
+     * @return the boost of each element (0 - 65535) which ranks it higher than elements matching
+     * the query equally well in SearchMode.RANKED or Null if all elements rank the same (called on
+     * the search thread).
+     */
+    protected int[] getSearchBoosts(List<? extends E> elements) {
+        return null;
+    }
+
+    /**
+     * @param queryString a query string normalized with Helper.normalizeForSearch.
+     * @return the query string the way it's searched in the search keys.
+     */
+    protected String normalizeQueryString(String queryString) {
+        return queryString;
+    }
+
+    /**
+     * @return all elements (the ones to filter).
+     */
+    abstract protected List<? extends E> getElements();
+
     /**
-     * Filter the data using the query strings.
+     * Called with the filtered elements (or all elements if the query is empty).
      */
-    abstract protected void performFiltering(String[] queryStrings);
+    abstract protected void onFilteringDone(List<? extends E> filteredElements);
 
-}
\ No newline at end of file
+}
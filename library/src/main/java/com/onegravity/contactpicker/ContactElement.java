@@ -34,6 +34,12 @@ public interface ContactElement extends Serializable {
 
     void addOnContactCheckedListener(OnContactCheckedListener listener);
 
+    /**
+     * @return True if the display name contains all query strings (ignoring case and diacritics,
+     * "jose" and "Jos&eacute;" both match Jos&eacute;).
+     *
+     * The picker itself doesn't use this, it searches with a SearchIndex.
+     */
     boolean matchesQuery(String[] queryStrings);
 
 }
@@ -24,6 +24,8 @@ import android.view.WindowManager;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.text.Normalizer;
+import java.util.Locale;
 
 public class Helper {
 
@@ -31,6 +33,78 @@ public class Helper {
         return string == null || string.length() == 0;
     }
 
+    /**
+     * Normalize a string for searching: lower case (using the default locale's rules, e.g. the
+     * Turkish dotless i), diacritics stripped (&eacute; -> e) and whitespace collapsed to single
+     * blanks (without leading or trailing blanks).
+     * Contact names and query strings must be normalized the same way to match.
+     */
+    public static String normalizeForSearch(String string) {
+        if (isNullOrEmpty(string)) return "";
+
+        string = string.toLowerCase(Locale.getDefault());
+
+        // decompose accented characters only if there are any (most names are plain ASCII)
+        boolean isAscii = true;
+        for (int i = 0, length = string.length(); i < length && isAscii; i++) {
+            isAscii = string.charAt(i) < 0x80;
+        }
+        if (! isAscii) {
+            string = Normalizer.normalize(string, Normalizer.Form.NFD);
+        }
+
+        StringBuilder normalized = new StringBuilder(string.length());
+        boolean pendingBlank = false;
+        for (int i = 0, length = string.length(); i < length; i++) {
+            char c = string.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingBlank = normalized.length() > 0;
+            }
+            else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                if (pendingBlank) {
+                    normalized.append(' ');
+                    pendingBlank = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Normalize a phone number for searching: the digits only ("+1 (555) 123-4567" -> "15551234567").
+     */
+    public static String normalizePhoneNumberForSearch(String number) {
+        if (isNullOrEmpty(number)) return "";
+
+        StringBuilder normalized = new StringBuilder(number.length());
+        for (int i = 0, length = number.length(); i < length; i++) {
+            int digit = Character.digit(number.charAt(i), 10);
+            if (digit >= 0) {
+                normalized.append((char) ('0' + digit));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return True if the string consists of digits and the usual phone number separators only
+     * (and at least one digit), e.g. "+1", "555-12" or "(555)".
+     */
+    public static boolean isPhoneNumber(String string) {
+        boolean hasDigit = false;
+        for (int i = 0, length = string.length(); i < length; i++) {
+            char c = string.charAt(i);
+            if (Character.isDigit(c)) {
+                hasDigit = true;
+            }
+            else if ("+-()./".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+
     public static DisplayMetrics getDisplayMetrics(Context context) {
         Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
         DisplayMetrics metrics = new DisplayMetrics();
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Word start index over the search keys of SearchMode.INITIALS.
+ *
+ * Four strings are derived from each key when the index is built:
+ *
+ * - the letters: the words without the blanks ("john doe" -> "johndoe")
+ * - the initials: the first letter of each word ("jd")
+ * - the keypad digits of the letters ("5646363") and of the initials ("53")
+ *
+ * Each word start in each of the four strings is an entry, the entries are sorted by the rest
+ * of their string (a suffix array restricted to word starts). A query string matches a key if
+ * one of its entries starts with it, which is found with a binary search for the range of
+ * entries with the query string as prefix ("jd", "do", "53" or "3636" all find John Doe).
+ *
+ * The parts of a key (separated by line feeds, see SearchIndex) are kept apart in all four
+ * strings so an entry never continues into the next part.
+ */
+class PrefixIndex {
+
+    private static final int NR_OF_STRINGS = 4;
+    private static final int LETTERS = 0;
+    private static final int INITIALS = 1;
+    private static final int LETTERS_KEYPAD = 2;
+    private static final int INITIALS_KEYPAD = 3;
+
+    /*
+     * The keypad digit of each letter a-z (ITU E.161).
+     */
+    private static final char[] KEYPAD = "22233344455566677778889999".toCharArray();
+
+    /*
+     * The number of bits of the entry in the packed sort key (see constructor).
+     */
+    private static final int ENTRY_BITS = 29;
+    private static final long ENTRY_MASK = (1L << ENTRY_BITS) - 1;
+
+    private final int mNrOfKeys;
+    private final String[] mStrings;        // NR_OF_STRINGS per key
+    private final int[] mEntryString;       // entry -> index in mStrings
+    private final int[] mEntryOffset;       // entry -> start of the word in its string
+
+    PrefixIndex(String[] keys) {
+        int nrOfKeys = keys.length;
+        mNrOfKeys = nrOfKeys;
+        mStrings = new String[nrOfKeys * NR_OF_STRINGS];
+        int[] entryString = new int[Math.max(16, nrOfKeys * NR_OF_STRINGS * 2)];
+        int[] entryOffset = new int[entryString.length];
+        int nrOfEntries = 0;
+
+        StringBuilder letters = new StringBuilder();
+        StringBuilder initials = new StringBuilder();
+        for (int k = 0; k < nrOfKeys; k++) {
+            String key = keys[k];
+            letters.setLength(0);
+            initials.setLength(0);
+            boolean isWordStart = true;
+            for (int i = 0, length = key.length(); i < length; i++) {
+                char c = key.charAt(i);
+                if (c == '\n') {
+                    letters.append(c);
+                    initials.append(c);
+                    isWordStart = true;
+                }
+                else if (c == ' ') {
+                    isWordStart = true;
+                }
+                else {
+                    if (isWordStart) {
+                        if (nrOfEntries + NR_OF_STRINGS > entryString.length) {
+                            entryString = Arrays.copyOf(entryString, entryString.length * 2);
+                            entryOffset = Arrays.copyOf(entryOffset, entryOffset.length * 2);
+                        }
+                        int base = k * NR_OF_STRINGS;
+                        for (int s = 0; s < NR_OF_STRINGS; s++) {
+                            entryString[nrOfEntries] = base + s;
+                            entryOffset[nrOfEntries++] = s == LETTERS || s == LETTERS_KEYPAD ?
+                                                         letters.length() : initials.length();
+                        }
+                        initials.append(c);
+                        isWordStart = false;
+                    }
+                    letters.append(c);
+                }
+            }
+
+            int base = k * NR_OF_STRINGS;
+            mStrings[base + LETTERS] = letters.toString();
+            mStrings[base + INITIALS] = initials.toString();
+            mStrings[base + LETTERS_KEYPAD] = toKeypad(mStrings[base + LETTERS]);
+            mStrings[base + INITIALS_KEYPAD] = toKeypad(mStrings[base + INITIALS]);
+        }
+
+        // sort the entries by the rest of their string: first by the first two characters with a
+        // primitive sort, then the runs with the same two characters. The two characters (17 bits
+        // each, see getChar) and the entry (lower 29 bits) are packed so the long is never negative,
+        // otherwise characters >= 0x8000 (e.g. CJK) would sort before all others.
+        long[] packed = new long[nrOfEntries];
+        for (int e = 0; e < nrOfEntries; e++) {
+            String string = mStrings[entryString[e]];
+            int offset = entryOffset[e];
+            packed[e] = (long) getChar(string, offset) << 46 | (long) getChar(string, offset + 1) << ENTRY_BITS | e;
+        }
+        Arrays.sort(packed);
+
+        final int[] strings = entryString;
+        final int[] offsets = entryOffset;
+        Comparator<Integer> comparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return compareSuffix(mStrings[strings[lhs]], offsets[lhs] + 2, mStrings[strings[rhs]], offsets[rhs] + 2);
+            }
+        };
+        mEntryString = new int[nrOfEntries];
+        mEntryOffset = new int[nrOfEntries];
+        for (int start = 0, end; start < nrOfEntries; start = end) {
+            long prefix = packed[start] >>> ENTRY_BITS;
+            end = start + 1;
+            while (end < nrOfEntries && packed[end] >>> ENTRY_BITS == prefix) end++;
+
+            Integer[] run = new Integer[end - start];
+            for (int i = 0; i < run.length; i++) {
+                run[i] = (int) (packed[start + i] & ENTRY_MASK);
+            }
+            if (run.length > 1) {
+                Arrays.sort(run, comparator);
+            }
+            for (int i = 0; i < run.length; i++) {
+                mEntryString[start + i] = entryString[run[i]];
+                mEntryOffset[start + i] = entryOffset[run[i]];
+            }
+        }
+    }
+
+    /**
+     * @return the character at the index plus one (0 if the string is shorter) so shorter
+     * strings sort before longer ones.
+     */
+    private static int getChar(String string, int index) {
+        return index < string.length() ? string.charAt(index) + 1 : 0;
+    }
+
+    /**
+     * @return the letters replaced by their keypad digits (other characters are kept).
+     */
+    static String toKeypad(String string) {
+        char[] chars = string.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c >= 'a' && c <= 'z') {
+                chars[i] = KEYPAD[c - 'a'];
+            }
+        }
+        return new String(chars);
+    }
+
+    private static int compareSuffix(String lhs, int lhsOffset, String rhs, int rhsOffset) {
+        int lhsLength = Math.max(0, lhs.length() - lhsOffset);
+        int rhsLength = Math.max(0, rhs.length() - rhsOffset);
+        for (int i = 0, n = Math.min(lhsLength, rhsLength); i < n; i++) {
+            int diff = lhs.charAt(lhsOffset + i) - rhs.charAt(rhsOffset + i);
+            if (diff != 0) return diff;
+        }
+        return lhsLength - rhsLength;
+    }
+
+    /**
+     * Compare an entry's string (from the offset) with the query string, only as many characters
+     * as the query string has.
+     *
+     * @return 0 if the entry starts with the query string, less than 0 if the entry sorts before
+     * the entries starting with it, greater than 0 if it sorts after them.
+     */
+    private int comparePrefix(int entry, String queryString) {
+        String string = mStrings[mEntryString[entry]];
+        int offset = mEntryOffset[entry];
+        int length = string.length() - offset;
+        for (int i = 0, n = Math.min(length, queryString.length()); i < n; i++) {
+            int diff = string.charAt(offset + i) - queryString.charAt(i);
+            if (diff != 0) return diff;
+        }
+        return length < queryString.length() ? -1 : 0;
+    }
+
+    /**
+     * @return the first entry for which comparePrefix is greater than (after = true) or not
+     * smaller than (after = false) 0.
+     */
+    private int search(String queryString, boolean after) {
+        int low = 0;
+        int high = mEntryString.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(mid, queryString);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the ascending positions of the keys with a word start matching the query string.
+     */
+    int[] lookup(String queryString) {
+        // the entries starting with the query string
+        int start = search(queryString, false);
+        int end = search(queryString, true);
+        int nrOfEntries = end - start;
+
+        int[] positions;
+        int nrOfPositions = 0;
+        if (nrOfEntries > mNrOfKeys / 8) {
+            // many matches: mark the keys and collect them in order
+            boolean[] isMatch = new boolean[mNrOfKeys];
+            for (int e = start; e < end; e++) {
+                isMatch[mEntryString[e] / NR_OF_STRINGS] = true;
+            }
+            positions = new int[Math.min(nrOfEntries, mNrOfKeys)];
+            for (int k = 0; k < mNrOfKeys; k++) {
+                if (isMatch[k]) positions[nrOfPositions++] = k;
+            }
+        }
+        else {
+            // few matches: sort them, a key can match with several entries
+            positions = new int[nrOfEntries];
+            for (int e = start; e < end; e++) {
+                positions[e - start] = mEntryString[e] / NR_OF_STRINGS;
+            }
+            Arrays.sort(positions);
+            for (int i = 0; i < nrOfEntries; i++) {
+                if (nrOfPositions == 0 || positions[i] != positions[nrOfPositions - 1]) {
+                    positions[nrOfPositions++] = positions[i];
+                }
+            }
+        }
+        return nrOfPositions == positions.length ? positions : Arrays.copyOf(positions, nrOfPositions);
+    }
+
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An index over the search keys of a list of contacts or groups (by default their normalized
+ * display names) to find the elements matching a query without checking every key.
+ *
+ * SearchMode.NAME looks up the trigrams of the query strings in a TrigramIndex and checks the
+ * remaining candidates with String.contains (the trigrams of a query string can occur in a key
+ * without the query string itself). Query strings shorter than a trigram can't be looked up,
+ * if a query consists of such strings only, all keys are checked.
+ * SearchMode.INITIALS looks up the query strings in a PrefixIndex of the word starts, initials
+ * and their keypad digits, these lookups are exact.
+ * SearchMode.RANKED finds the candidates like SearchMode.NAME plus the keys with a word that
+ * starts with the query string except for a typo (see WordIndex). The matches are scored (prefix
+ * > word start > substring > typo, then by the element's boost) and the best RANKED_RESULTS are
+ * selected with a bounded heap, so the matches don't need to be sorted.
+ *
+ * An instance is built once per list and never modified afterwards, so it can be built and
+ * searched on a background thread.
+ */
+public class SearchIndex<E extends ContactElement> {
+
+    /*
+     * Check whether the search thread was interrupted every 1024 keys.
+     */
+    private static final int INTERRUPT_CHECK_MASK = 1023;
+
+    /*
+     * The number of matches ranked in SearchMode.RANKED, the other matches follow in list order.
+     */
+    private static final int RANKED_RESULTS = 50;
+
+    // how well a query string matches a key in SearchMode.RANKED (-1 = no match)
+    private static final int MATCH_FUZZY = 0;
+    private static final int MATCH_SUBSTRING = 1;
+    private static final int MATCH_WORD_START = 2;
+    private static final int MATCH_PREFIX = 3;
+
+    private static final int MAX_BOOST = 0xffff;
+
+    private final List<? extends E> mElements;
+    private final String[] mKeys;
+    private final SearchMode mMode;
+
+    // Null if not needed for the search mode
+    private final TrigramIndex mTrigrams;
+    private final PrefixIndex mPrefixes;
+    private final WordIndex mWords;
+    private final int[] mBoosts;
+
+    public SearchIndex(List<? extends E> elements) {
+        this(elements, getDisplayNameKeys(elements), null, SearchMode.NAME);
+    }
+
+    /**
+     * @param keys the search key of each element (normalized with Helper.normalizeForSearch).
+     * A key can consist of several parts (e.g. the name and the phone numbers) separated by a
+     * line feed, query strings never contain one so they can't match across parts.
+     * @param boosts the boost of each element (0 - 65535) to rank equally good matches in
+     * SearchMode.RANKED (can be Null).
+     */
+    public SearchIndex(List<? extends E> elements, String[] keys, int[] boosts, SearchMode mode) {
+        mElements = elements;
+        mKeys = keys;
+        mMode = mode;
+        mTrigrams = mode == SearchMode.NAME || mode == SearchMode.RANKED ? new TrigramIndex(keys) : null;
+        mPrefixes = mode == SearchMode.INITIALS ? new PrefixIndex(keys) : null;
+        mWords = mode == SearchMode.RANKED ? new WordIndex(keys) : null;
+        mBoosts = boosts;
+    }
+
+    private static String[] getDisplayNameKeys(List<? extends ContactElement> elements) {
+        String[] keys = new String[elements.size()];
+        for (int e = 0; e < keys.length; e++) {
+            keys[e] = Helper.normalizeForSearch(elements.get(e).getDisplayName());
+        }
+        return keys;
+    }
+
+    /**
+     * @return True if this index was built for the given list.
+     */
+    public boolean isFor(List<?> elements) {
+        return mElements == elements;
+    }
+
+    /**
+     * Search the elements whose key matches all query strings (according to the search mode).
+     *
+     * If the previous result comes from this index and the query extends its query (e.g. "jo"
+     * -> "joh"), only the elements of the previous result are searched (not in SearchMode.RANKED,
+     * a longer query string can match with a typo what the shorter one didn't match at all).
+     * The search can be cancelled by interrupting the search thread.
+     *
+     * @param queryStrings the query strings normalized with Helper.normalizeForSearch.
+     * @param previous the result of a previous search (can be Null).
+     * @return the elements matching all query strings (in list order, in SearchMode.RANKED the
+     * best matches first) or Null if the thread was interrupted.
+     */
+    public Result search(String[] queryStrings, Result previous) {
+        if (mMode == SearchMode.RANKED) return searchRanked(queryStrings);
+
+        int[] candidates = null;
+        int nrOfCandidates = 0;
+        if (previous != null && previous.getIndex() == this && extendsQuery(queryStrings, previous.mQueryStrings)) {
+            candidates = previous.mPositions.clone();
+            nrOfCandidates = candidates.length;
+        }
+
+        for (String queryString : queryStrings) {
+            int[] matches = mTrigrams != null ? mTrigrams.lookup(queryString) : mPrefixes.lookup(queryString);
+            if (matches == null) continue;
+
+            if (candidates == null) {
+                candidates = matches;
+                nrOfCandidates = matches.length;
+            }
+            else {
+                nrOfCandidates = intersect(candidates, nrOfCandidates, matches, 0, matches.length);
+            }
+            if (nrOfCandidates == 0) return new Result(queryStrings, new int[0]);
+            if (Thread.currentThread().isInterrupted()) return null;
+        }
+
+        if (candidates == null) {
+            // no query string is long enough to be looked up: check all keys
+            candidates = new int[mKeys.length];
+            for (int e = 0; e < candidates.length; e++) {
+                candidates[e] = e;
+            }
+            nrOfCandidates = candidates.length;
+        }
+
+        if (mMode == SearchMode.INITIALS) {
+            // the prefix lookups are exact
+            return new Result(queryStrings, Arrays.copyOf(candidates, nrOfCandidates));
+        }
+
+        int size = 0;
+        for (int i = 0; i < nrOfCandidates; i++) {
+            if ((i & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) return null;
+
+            int element = candidates[i];
+            if (matches(mKeys[element], queryStrings)) {
+                candidates[size++] = element;
+            }
+        }
+        return new Result(queryStrings, Arrays.copyOf(candidates, size));
+    }
+
+    private Result searchRanked(String[] queryStrings) {
+        // the candidates: the keys containing the trigrams of a query string or a similar word
+        int nrOfQueryStrings = queryStrings.length;
+        int[][] fuzzyMatches = new int[nrOfQueryStrings][];
+        int[] candidates = null;
+        int nrOfCandidates = 0;
+        for (int q = 0; q < nrOfQueryStrings; q++) {
+            String queryString = queryStrings[q];
+            int maxDistance = getMaxDistance(queryString);
+            fuzzyMatches[q] = maxDistance > 0 ? mWords.lookupFuzzy(queryString, maxDistance) : new int[0];
+            int[] matches = mTrigrams.lookup(queryString);
+            if (matches == null) continue;
+
+            matches = union(matches, fuzzyMatches[q]);
+            if (candidates == null) {
+                candidates = matches;
+                nrOfCandidates = matches.length;
+            }
+            else {
+                nrOfCandidates = intersect(candidates, nrOfCandidates, matches, 0, matches.length);
+            }
+            if (nrOfCandidates == 0) return new Result(queryStrings, new int[0]);
+            if (Thread.currentThread().isInterrupted()) return null;
+        }
+
+        if (candidates == null) {
+            // no query string is long enough to be looked up: check all keys
+            candidates = new int[mKeys.length];
+            for (int e = 0; e < candidates.length; e++) {
+                candidates[e] = e;
+            }
+            nrOfCandidates = candidates.length;
+        }
+
+        // score the candidates and keep the best ones in a heap (the worst of them at the top)
+        int[] scores = new int[nrOfCandidates];
+        int heapCapacity = Math.min(RANKED_RESULTS, nrOfCandidates);
+        int[] heap = new int[heapCapacity];         // indexes into candidates / scores
+        int heapSize = 0;
+        int size = 0;
+        for (int i = 0; i < nrOfCandidates; i++) {
+            if ((i & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) return null;
+
+            int element = candidates[i];
+            int score = getScore(element, queryStrings, fuzzyMatches);
+            if (score < 0) continue;
+
+            candidates[size] = element;
+            scores[size] = score;
+            if (heapSize < heapCapacity) {
+                heap[heapSize] = size;
+                siftUp(heap, heapSize++, scores);
+            }
+            else if (scores[heap[0]] < score) {
+                // equal scores: the element with the lower position (already in the heap) wins
+                heap[0] = size;
+                siftDown(heap, heapSize, scores);
+            }
+            size++;
+        }
+
+        // the ranked matches (best first), followed by the other matches in list order
+        int[] positions = new int[size];
+        boolean[] isRanked = new boolean[size];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            int worst = heap[0];
+            positions[i] = candidates[worst];
+            isRanked[worst] = true;
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        for (int i = 0, pos = heapSize; i < size; i++) {
+            if (! isRanked[i]) {
+                positions[pos++] = candidates[i];
+            }
+        }
+        return new Result(queryStrings, positions);
+    }
+
+    /**
+     * @return the number of typos tolerated in a query string.
+     */
+    private static int getMaxDistance(String queryString) {
+        int length = queryString.length();
+        return length < 4 ? 0 : length < 8 ? 1 : 2;
+    }
+
+    /**
+     * @return the score of a key (the sum of the match levels of all query strings in the upper,
+     * the boost in the lower 16 bits) or -1 if a query string doesn't match.
+     */
+    private int getScore(int element, String[] queryStrings, int[][] fuzzyMatches) {
+        String key = mKeys[element];
+        if (key.isEmpty()) return -1;
+
+        int level = 0;
+        for (int q = 0; q < queryStrings.length; q++) {
+            int match = getMatchLevel(key, queryStrings[q]);
+            if (match < 0) {
+                if (Arrays.binarySearch(fuzzyMatches[q], element) < 0) return -1;
+                match = MATCH_FUZZY;
+            }
+            level += match;
+        }
+
+        int boost = mBoosts != null ? Math.max(0, Math.min(MAX_BOOST, mBoosts[element])) : 0;
+        return level << 16 | boost;
+    }
+
+    private static int getMatchLevel(String key, String queryString) {
+        int pos = key.indexOf(queryString);
+        if (pos < 0) return -1;
+        if (pos == 0) return MATCH_PREFIX;
+
+        for (; pos > 0; pos = key.indexOf(queryString, pos + 1)) {
+            if (WordIndex.isSeparator(key.charAt(pos - 1))) return MATCH_WORD_START;
+        }
+        return MATCH_SUBSTRING;
+    }
+
+    /**
+     * @return True if the match at index lhs is worse than the one at index rhs (lower score or
+     * same score and later in the list).
+     */
+    private static boolean isWorse(int lhs, int rhs, int[] scores) {
+        return scores[lhs] < scores[rhs] || (scores[lhs] == scores[rhs] && lhs > rhs);
+    }
+
+    private static void siftUp(int[] heap, int pos, int[] scores) {
+        int value = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (! isWorse(value, heap[parent], scores)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, int[] scores) {
+        if (size == 0) return;
+
+        int value = heap[0];
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isWorse(heap[child + 1], heap[child], scores)) child++;
+            if (! isWorse(heap[child], value, scores)) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = value;
+    }
+
+    /**
+     * @return the union of two ascending arrays (ascending, without duplicates).
+     */
+    private static int[] union(int[] lhs, int[] rhs) {
+        if (rhs.length == 0) return lhs;
+
+        int[] union = new int[lhs.length + rhs.length];
+        int size = 0;
+        for (int i = 0, j = 0; i < lhs.length || j < rhs.length; ) {
+            if (j == rhs.length || (i < lhs.length && lhs[i] < rhs[j])) {
+                union[size++] = lhs[i++];
+            }
+            else if (i == lhs.length || rhs[j] < lhs[i]) {
+                union[size++] = rhs[j++];
+            }
+            else {
+                union[size++] = lhs[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(union, size);
+    }
+
+    /**
+     * @return True if every element matching queryStrings also matches previousQueryStrings,
+     * which is the case if each previous query string is part (SearchMode.NAME) or the start
+     * (SearchMode.INITIALS) of one of the query strings.
+     */
+    private boolean extendsQuery(String[] queryStrings, String[] previousQueryStrings) {
+        for (String previousQueryString : previousQueryStrings) {
+            boolean isExtended = false;
+            for (String queryString : queryStrings) {
+                if (mMode == SearchMode.NAME ?
+                    queryString.contains(previousQueryString) :
+                    queryString.startsWith(previousQueryString)) {
+                    isExtended = true;
+                    break;
+                }
+            }
+            if (! isExtended) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Intersect the sorted candidates with the sorted postings[start ... end-1] (in place).
+     *
+     * @return the number of remaining candidates.
+     */
+    static int intersect(int[] candidates, int nrOfCandidates, int[] postings, int start, int end) {
+        int size = 0;
+        for (int i = 0, p = start; i < nrOfCandidates && p < end; ) {
+            int candidate = candidates[i];
+            int posting = postings[p];
+            if (candidate < posting) {
+                i++;
+            }
+            else if (candidate > posting) {
+                p++;
+            }
+            else {
+                candidates[size++] = candidate;
+                i++;
+                p++;
+            }
+        }
+        return size;
+    }
+
+    private static boolean matches(String key, String[] queryStrings) {
+        if (key.isEmpty()) return false;
+
+        for (String queryString : queryStrings) {
+            if (! key.contains(queryString)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The result of a search: a read-only view of the matching elements.
+     */
+    public class Result extends AbstractList<E> implements RandomAccess {
+
+        private final String[] mQueryStrings;
+        private final int[] mPositions;
+
+        private Result(String[] queryStrings, int[] positions) {
+            mQueryStrings = queryStrings;
+            mPositions = positions;
+        }
+
+        private SearchIndex<E> getIndex() {
+            return SearchIndex.this;
+        }
+
+        @Override
+        public E get(int location) {
+            return mElements.get(mPositions[location]);
+        }
+
+        @Override
+        public int size() {
+            return mPositions.length;
+        }
+
+        /**
+         * @return the elements the index was built for (the ones this result was found in).
+         */
+        public List<? extends E> getElements() {
+            return mElements;
+        }
+
+        /**
+         * @return the position in getElements() of the element at the location of this result.
+         */
+        public int getElementPosition(int location) {
+            return mPositions[location];
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import android.util.Log;
+
+/**
+ * How the query strings are matched against the names.
+ */
+public enum SearchMode {
+
+    /**
+     * The name contains the query string ("ohn" finds John Doe).
+     */
+    NAME,
+
+    /**
+     * A word of the name starts with the query string, the query string matches the initials
+     * or it's the keypad digits of either (dialer style: "do", "jd", "3636" and "53" all find
+     * John Doe).
+     */
+    INITIALS,
+
+    /**
+     * Like NAME but tolerates typos ("jonh" finds John Doe) and shows the best matches first:
+     * the name starts with the query string, then a word starts with it, then the name contains
+     * it, then it matches with a typo (favorites and frequently contacted contacts first, the
+     * latter only before Android 10 which always reports 0 as TIMES_CONTACTED).
+     */
+    RANKED;
+
+    public static SearchMode lookup(String name) {
+        if (name == null) return NAME;
+
+        try {
+            return SearchMode.valueOf(name);
+        }
+        catch (IllegalArgumentException ignore) {
+            Log.e(SearchMode.class.getSimpleName(), ignore.getMessage());
+            return NAME;
+        }
+    }
+
+}
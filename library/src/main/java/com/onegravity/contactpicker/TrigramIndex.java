@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import java.util.Arrays;
+
+/**
+ * Trigram posting lists over the search keys of SearchMode.NAME and SearchMode.RANKED.
+ *
+ * Every distinct trigram of the keys has a posting list: the ascending positions of the keys
+ * containing it. The postings are stored in compressed sparse row format (the postings of
+ * trigram t are mPostings[mGramStart[t] ... mGramStart[t+1]-1]).
+ */
+class TrigramIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final long[] mGrams;
+    private final int[] mGramStart;
+    private final int[] mPostings;
+
+    TrigramIndex(String[] keys) {
+        int nrOfKeys = keys.length;
+        int nrOfGrams = 0;
+        for (String key : keys) {
+            nrOfGrams += Math.max(0, key.length() - GRAM_LENGTH + 1);
+        }
+
+        // all trigrams of all keys, sorted and de-duplicated: the trigram dictionary
+        long[] allGrams = new long[nrOfGrams];
+        int pos = 0;
+        for (String key : keys) {
+            for (int i = 0, end = key.length() - GRAM_LENGTH; i <= end; i++) {
+                allGrams[pos++] = getGram(key, i);
+            }
+        }
+        Arrays.sort(allGrams);
+        int nrOfDistinctGrams = 0;
+        for (int i = 0; i < nrOfGrams; i++) {
+            if (i == 0 || allGrams[i] != allGrams[i - 1]) {
+                allGrams[nrOfDistinctGrams++] = allGrams[i];
+            }
+        }
+        mGrams = Arrays.copyOf(allGrams, nrOfDistinctGrams);
+
+        // key -> trigrams (each trigram once per key)
+        int[] keyStart = new int[nrOfKeys + 1];
+        int[] keyGrams = new int[nrOfGrams];
+        int[] gramSize = new int[nrOfDistinctGrams];
+        int nrOfEdges = 0;
+        for (int k = 0; k < nrOfKeys; k++) {
+            String key = keys[k];
+            keyStart[k] = nrOfEdges;
+            for (int i = 0, end = key.length() - GRAM_LENGTH; i <= end; i++) {
+                keyGrams[nrOfEdges + i] = Arrays.binarySearch(mGrams, getGram(key, i));
+            }
+            int end = nrOfEdges + Math.max(0, key.length() - GRAM_LENGTH + 1);
+            Arrays.sort(keyGrams, nrOfEdges, end);
+            for (int i = nrOfEdges; i < end; i++) {
+                int gram = keyGrams[i];
+                if (i == keyStart[k] || gram != keyGrams[nrOfEdges - 1]) {
+                    keyGrams[nrOfEdges++] = gram;
+                    gramSize[gram]++;
+                }
+            }
+        }
+        keyStart[nrOfKeys] = nrOfEdges;
+
+        // trigram -> keys (the positions of each trigram are ascending)
+        mGramStart = new int[nrOfDistinctGrams + 1];
+        for (int g = 0; g < nrOfDistinctGrams; g++) {
+            mGramStart[g + 1] = mGramStart[g] + gramSize[g];
+        }
+        int[] next = Arrays.copyOf(mGramStart, nrOfDistinctGrams);
+        mPostings = new int[nrOfEdges];
+        for (int k = 0; k < nrOfKeys; k++) {
+            for (int i = keyStart[k], end = keyStart[k + 1]; i < end; i++) {
+                mPostings[next[keyGrams[i]]++] = k;
+            }
+        }
+    }
+
+    private static long getGram(String string, int start) {
+        return ((long) string.charAt(start) << 32) |
+               ((long) string.charAt(start + 1) << 16) |
+               string.charAt(start + 2);
+    }
+
+    /**
+     * @return the ascending positions of the keys containing all trigrams of the query string
+     * (a superset of the keys containing the query string itself) or Null if the query string
+     * is shorter than a trigram.
+     */
+    int[] lookup(String queryString) {
+        int[] candidates = null;
+        int nrOfCandidates = 0;
+        for (int i = 0, end = queryString.length() - GRAM_LENGTH; i <= end; i++) {
+            int gram = Arrays.binarySearch(mGrams, getGram(queryString, i));
+            if (gram < 0) return new int[0];
+
+            int start = mGramStart[gram];
+            int size = mGramStart[gram + 1] - start;
+            if (candidates == null) {
+                candidates = Arrays.copyOfRange(mPostings, start, start + size);
+                nrOfCandidates = size;
+            }
+            else {
+                nrOfCandidates = SearchIndex.intersect(candidates, nrOfCandidates, mPostings, start, start + size);
+            }
+        }
+        return candidates == null || nrOfCandidates == candidates.length ?
+               candidates :
+               Arrays.copyOf(candidates, nrOfCandidates);
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The distinct words of the search keys of SearchMode.RANKED with the ascending positions of the
+ * keys containing them (in compressed sparse row format like the TrigramIndex).
+ *
+ * A fuzzy lookup compares the query string with each distinct word instead of each key: an
+ * address book has a lot fewer distinct words than names, and a typo can't be found with
+ * trigrams (the trigrams around the typo are missing).
+ */
+class WordIndex {
+
+    private final String[] mWords;
+    private final int[] mWordStart;
+    private final int[] mPostings;
+
+    WordIndex(String[] keys) {
+        Map<String, Integer> wordIds = new HashMap<>();
+        int[] keyStart = new int[keys.length + 1];
+        int[] keyWords = new int[Math.max(16, keys.length * 2)];
+        int nrOfEdges = 0;
+        for (int k = 0; k < keys.length; k++) {
+            String key = keys[k];
+            keyStart[k] = nrOfEdges;
+            for (int start = 0, length = key.length(); start < length; ) {
+                int end = start;
+                while (end < length && ! isSeparator(key.charAt(end))) end++;
+                if (end > start) {
+                    String word = key.substring(start, end);
+                    Integer id = wordIds.get(word);
+                    if (id == null) {
+                        id = wordIds.size();
+                        wordIds.put(word, id);
+                    }
+                    if (nrOfEdges == keyWords.length) {
+                        keyWords = Arrays.copyOf(keyWords, nrOfEdges * 2);
+                    }
+                    keyWords[nrOfEdges++] = id;
+                }
+                start = end + 1;
+            }
+        }
+        keyStart[keys.length] = nrOfEdges;
+
+        int nrOfWords = wordIds.size();
+        mWords = new String[nrOfWords];
+        for (Map.Entry<String, Integer> entry : wordIds.entrySet()) {
+            mWords[entry.getValue()] = entry.getKey();
+        }
+
+        // word -> keys (a word occurring twice in a key is listed once)
+        int[] lastKey = new int[nrOfWords];
+        Arrays.fill(lastKey, -1);
+        int[] wordSize = new int[nrOfWords];
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = keyStart[k], end = keyStart[k + 1]; i < end; i++) {
+                int word = keyWords[i];
+                if (lastKey[word] != k) {
+                    lastKey[word] = k;
+                    wordSize[word]++;
+                }
+            }
+        }
+        mWordStart = new int[nrOfWords + 1];
+        for (int w = 0; w < nrOfWords; w++) {
+            mWordStart[w + 1] = mWordStart[w] + wordSize[w];
+        }
+        int[] next = Arrays.copyOf(mWordStart, nrOfWords);
+        mPostings = new int[mWordStart[nrOfWords]];
+        Arrays.fill(lastKey, -1);
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = keyStart[k], end = keyStart[k + 1]; i < end; i++) {
+                int word = keyWords[i];
+                if (lastKey[word] != k) {
+                    lastKey[word] = k;
+                    mPostings[next[word]++] = k;
+                }
+            }
+        }
+    }
+
+    static boolean isSeparator(char c) {
+        return c == ' ' || c == '\n';
+    }
+
+    /**
+     * @return the ascending positions of the keys with a word starting with the query string
+     * within the given edit distance.
+     */
+    int[] lookupFuzzy(String queryString, int maxDistance) {
+        int length = queryString.length();
+        int[] rows = new int[(length + 1) * 3];
+
+        int[] positions = new int[16];
+        int nrOfPositions = 0;
+        for (int w = 0; w < mWords.length; w++) {
+            String word = mWords[w];
+            if (word.length() < length - maxDistance) continue;
+            if (getPrefixDistance(queryString, word, maxDistance, rows) > maxDistance) continue;
+
+            int start = mWordStart[w];
+            int size = mWordStart[w + 1] - start;
+            if (nrOfPositions + size > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, nrOfPositions + size));
+            }
+            System.arraycopy(mPostings, start, positions, nrOfPositions, size);
+            nrOfPositions += size;
+        }
+
+        // keys with several matching words
+        Arrays.sort(positions, 0, nrOfPositions);
+        int size = 0;
+        for (int i = 0; i < nrOfPositions; i++) {
+            if (size == 0 || positions[i] != positions[size - 1]) {
+                positions[size++] = positions[i];
+            }
+        }
+        return Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * The edit distance (insertions, deletions, substitutions and transpositions of adjacent
+     * characters) between the query string and the closest start of the word ("jonh" -> "johnson"
+     * is 1). The computation stops as soon as the distance exceeds maxDistance.
+     *
+     * @param rows space for three rows of (queryString.length() + 1) ints.
+     * @return the distance (or a value greater than maxDistance).
+     */
+    static int getPrefixDistance(String queryString, String word, int maxDistance, int[] rows) {
+        int length = queryString.length();
+        int stride = length + 1;
+        int prevPrev = 0;           // row j-2
+        int prev = stride;          // row j-1
+        int cur = 2 * stride;       // row j
+        for (int i = 0; i <= length; i++) {
+            rows[prev + i] = i;
+        }
+
+        int distance = length;
+        for (int j = 1, end = Math.min(word.length(), length + maxDistance); j <= end; j++) {
+            char c = word.charAt(j - 1);
+            rows[cur] = j;
+            int rowMin = j;
+            for (int i = 1; i <= length; i++) {
+                char q = queryString.charAt(i - 1);
+                int d = Math.min(rows[prev + i] + 1, rows[cur + i - 1] + 1);
+                d = Math.min(d, rows[prev + i - 1] + (q == c ? 0 : 1));
+                if (i > 1 && j > 1 && q == word.charAt(j - 2) && queryString.charAt(i - 2) == c) {
+                    d = Math.min(d, rows[prevPrev + i - 2] + 1);
+                }
+                rows[cur + i] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            distance = Math.min(distance, rows[cur + length]);
+            if (rowMin > maxDistance) break;
+
+            int tmp = prevPrev;
+            prevPrev = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return distance;
+    }
+
+}
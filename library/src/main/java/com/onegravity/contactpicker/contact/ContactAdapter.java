@@ -29,16 +29,15 @@ import com.onegravity.contactpicker.picture.ContactPictureManager;
 import com.onegravity.contactpicker.picture.ContactPictureType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 
 public class ContactAdapter extends RecyclerView.Adapter<ContactViewHolder> implements SectionIndexer  {
 
     private List<? extends Contact> mContacts;
 
-    final private ContactSortOrder mSortOrder;
+    private ContactSortOrder mSortOrder;
     final private ContactPictureType mContactPictureType;
     final private ContactDescription mContactDescription;
     final private int mContactDescriptionType;
@@ -59,12 +58,36 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactViewHolder> impl
         mContactPictureLoader = new ContactPictureManager(context, mContactPictureType == ContactPictureType.ROUND);
     }
 
+    /**
+     * Change the sort order the sections are calculated for.
+     * Must be followed by a setData call with the contacts in that order.
+     */
+    public void setSortOrder(ContactSortOrder sortOrder) {
+        mSortOrder = sortOrder;
+    }
+
     public void setData(List<? extends Contact> contacts) {
         mContacts = contacts;
         notifyDataSetChanged();
-        if (! mContacts.isEmpty()) {
-            calculateSections();
+        calculateSections();
+    }
+
+    /**
+     * Replace the contacts and only notify about the items that were actually added, removed,
+     * moved or changed.
+     *
+     * @param diff the changes (calculated off the ui thread), if they weren't calculated for the
+     *             contacts shown right now all contacts are replaced.
+     */
+    public void setData(List<? extends Contact> contacts, ContactsDiff diff) {
+        if (diff == null || mContacts == null || diff.getOldContacts() != mContacts) {
+            setData(contacts);
+            return;
         }
+
+        mContacts = contacts;
+        calculateSections();
+        diff.getResult().dispatchUpdatesTo(this);
     }
 
     @Override
@@ -100,30 +123,88 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactViewHolder> impl
         return mContacts == null ? super.getItemId(position) : mContacts.get(position).getId();
     }
 
-    private Map<Character, ContactSection> mSections = new HashMap<>();
-    private ContactSection[] mSectionArray;
+    /*
+     * The sections are calculated once per data set so the SectionIndexer calls (which happen
+     * continuously while fast scrolling) are plain array reads.
+     */
+    private ContactSection[] mSectionArray = new ContactSection[0];
+    private int[] mPositionToSection = new int[0];
+    private int[] mSectionToPosition = new int[0];
+
+    /*
+     * The contacts and the sort order the sections were calculated for.
+     * The contact lists are never modified once they have been set, so the sections don't need to
+     * be calculated again if the same list is set again (e.g. after the selection changed).
+     */
+    private List<? extends Contact> mSectionContacts;
+    private ContactSortOrder mSectionSortOrder;
 
     synchronized private void calculateSections() {
-        mSections.clear();
+        if (mContacts == mSectionContacts && mSortOrder == mSectionSortOrder) return;
+        mSectionContacts = mContacts;
+        mSectionSortOrder = mSortOrder;
+
+        int size = mContacts != null ? mContacts.size() : 0;
+        if (calculateSectionsFromIndex(size)) return;
+
+        int[] positionToSection = new int[size];
+        int[] sectionToPosition = new int[Math.min(size, 64)];
         List<ContactSection> sectionArray = new ArrayList<>();
 
-        if (mContacts != null) {
-            int contactPos = 0;
-            int sectionPos = 0;
-            char prevLetter = 0;
-            for (Contact contact : mContacts) {
-                char letter = contact.getContactLetter(mSortOrder);
-                if (letter != prevLetter) {
-                    ContactSection newSection = new ContactSection(letter, sectionPos++, contactPos);
-                    mSections.put(letter, newSection);
-                    sectionArray.add(newSection);
-                    prevLetter = letter;
+        int sectionPos = -1;
+        char prevLetter = 0;
+        for (int contactPos = 0; contactPos < size; contactPos++) {
+            char letter = getContactLetter(contactPos);
+            if (letter != prevLetter || sectionPos < 0) {
+                sectionPos++;
+                if (sectionPos == sectionToPosition.length) {
+                    sectionToPosition = Arrays.copyOf(sectionToPosition, sectionPos * 2);
                 }
-                contactPos++;
+                sectionToPosition[sectionPos] = contactPos;
+                sectionArray.add(new ContactSection(letter, sectionPos, contactPos));
+                prevLetter = letter;
             }
+            positionToSection[contactPos] = sectionPos;
         }
 
         mSectionArray = sectionArray.toArray(new ContactSection[sectionArray.size()]);
+        mPositionToSection = positionToSection;
+        mSectionToPosition = Arrays.copyOf(sectionToPosition, sectionPos + 1);
+    }
+
+    /**
+     * Use the alphabetic index of the contacts (if they come with one for the sort order).
+     *
+     * @return True if the sections have been calculated from the index.
+     */
+    private boolean calculateSectionsFromIndex(int size) {
+        if (! (mContacts instanceof ContactIndexedList)) return false;
+
+        ContactIndexedList indexedList = (ContactIndexedList) mContacts;
+        String[] titles = indexedList.getSectionTitles(mSortOrder);
+        int[] counts = indexedList.getSectionCounts(mSortOrder);
+        if (titles == null || counts == null || titles.length != counts.length) return false;
+
+        List<ContactSection> sectionArray = new ArrayList<>(titles.length);
+        int[] positionToSection = new int[size];
+        int[] sectionToPosition = new int[titles.length];
+        int contactPos = 0;
+        for (int i = 0; i < titles.length; i++) {
+            if (counts[i] <= 0) continue;
+            if (contactPos + counts[i] > size) return false;
+
+            int sectionPos = sectionArray.size();
+            sectionArray.add(new ContactSection(titles[i], sectionPos, contactPos));
+            sectionToPosition[sectionPos] = contactPos;
+            Arrays.fill(positionToSection, contactPos, contactPos + counts[i], sectionPos);
+            contactPos += counts[i];
+        }
+        if (contactPos != size) return false;
+
+        mSectionArray = sectionArray.toArray(new ContactSection[sectionArray.size()]);
+        mPositionToSection = positionToSection;
+        mSectionToPosition = Arrays.copyOf(sectionToPosition, sectionArray.size());
+        return true;
     }
 
     @Override
@@ -133,32 +214,27 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactViewHolder> impl
 
     @Override
     public synchronized int getPositionForSection(int sectionPos) {
-        if (mSections == null || mSections.isEmpty() ||
-            mContacts == null || mContacts.isEmpty()) return 0;
+        int nrOfSections = mSectionToPosition.length;
+        if (nrOfSections == 0) return 0;
 
-        int maxIndexSections = assertBoundaries(mSectionArray.length - 1, 0, mSectionArray.length);
-        sectionPos = assertBoundaries(sectionPos, 0, maxIndexSections);
-
-        int contactPos = mSectionArray[sectionPos].getContactPos();
-
-        int maxIndexContacts = assertBoundaries(mContacts.size() - 1, 0, mContacts.size());
-        return assertBoundaries(contactPos, 0, maxIndexContacts);
+        return mSectionToPosition[assertBoundaries(sectionPos, 0, nrOfSections - 1)];
     }
 
     @Override
     public synchronized int getSectionForPosition(int contactPosition) {
-        if (mSections == null || mSections.isEmpty() ||
-            mContacts == null || mContacts.isEmpty()) return 0;
+        int nrOfContacts = mPositionToSection.length;
+        if (nrOfContacts == 0) return 0;
 
-        int maxIndexContacts = assertBoundaries(mContacts.size() - 1, 0, mContacts.size());
-        contactPosition = assertBoundaries(contactPosition, 0, maxIndexContacts);
-
-        char contactLetter = mContacts.get(contactPosition).getContactLetter(mSortOrder);
-        ContactSection section = mSections.get(contactLetter);
-        int sectionPos = section != null ? section.getSectionPos() : 0;
+        return mPositionToSection[assertBoundaries(contactPosition, 0, nrOfContacts - 1)];
+    }
 
-        int maxIndexSections = assertBoundaries(mSectionArray.length - 1, 0, mSectionArray.length);
-        return assertBoundaries(sectionPos, 0, maxIndexSections);
+    /**
+     * Lists that create their contacts on demand can determine the letter without creating them.
+     */
+    private char getContactLetter(int position) {
+        return mContacts instanceof ContactLetterList ?
+                ((ContactLetterList) mContacts).getContactLetter(position, mSortOrder) :
+                mContacts.get(position).getContactLetter(mSortOrder);
     }
 
     private int assertBoundaries(int index, int lower, int upper) {
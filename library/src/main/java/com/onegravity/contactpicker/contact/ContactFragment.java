@@ -25,7 +25,10 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.onegravity.contactpicker.BaseFragment;
+import com.onegravity.contactpicker.Helper;
 import com.onegravity.contactpicker.R;
+import com.onegravity.contactpicker.SearchIndex;
+import com.onegravity.contactpicker.SearchMode;
 import com.onegravity.contactpicker.picture.ContactPictureType;
 
 import org.greenrobot.eventbus.EventBus;
@@ -34,22 +37,32 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import xyz.danoz.recyclerviewfastscroller.sectionindicator.title.SectionTitleIndicator;
 import xyz.danoz.recyclerviewfastscroller.vertical.VerticalRecyclerViewFastScroller;
 
-public class ContactFragment extends BaseFragment {
+public class ContactFragment extends BaseFragment<Contact> {
 
     private static final String REQUEST_SORT_ORDER = "sortOrder";
     private static final String REQUEST_PICTURE_TYPE = "pictureType";
     private static final String REQUEST_CONTACT_DESCRIPTION = "contactDescription";
     private static final String REQUEST_DESCRIPTION_TYPE = "descriptionType";
+    private static final String REQUEST_SEARCH_DETAILS = "searchDetails";
+    private static final String REQUEST_SEARCH_MODE = "searchMode";
 
     private ContactSortOrder mSortOrder;
     private ContactPictureType mPictureType;
     private ContactDescription mDescription;
     private int mDescriptionType;
 
+    /*
+     * True if the contacts are also searched by their phone numbers and emails.
+     */
+    private boolean mSearchDetails;
+
+    private SearchMode mSearchMode;
+
     /**
      * The list of all contacts.
      * This is only used as a reference to the original data set while we actually use
@@ -57,6 +70,11 @@ public class ContactFragment extends BaseFragment {
      */
     private List<? extends Contact> mContacts = new ArrayList<>();
 
+    /*
+     * The last ContactsLoaded event, its search boosts are read by the search thread.
+     */
+    private volatile ContactsLoaded mContactsLoaded;
+
     /**
      * The list of all visible and filtered contacts.
      */
@@ -67,12 +85,16 @@ public class ContactFragment extends BaseFragment {
     public static ContactFragment newInstance(ContactSortOrder sortOrder,
                                               ContactPictureType pictureType,
                                               ContactDescription contactDescription,
-                                              int descriptionType) {
+                                              int descriptionType,
+                                              boolean searchDetails,
+                                              SearchMode searchMode) {
         Bundle args = new Bundle();
         args.putString(REQUEST_SORT_ORDER, sortOrder.name());
         args.putString(REQUEST_PICTURE_TYPE, pictureType.name());
         args.putString(REQUEST_CONTACT_DESCRIPTION, contactDescription.name());
         args.putInt(REQUEST_DESCRIPTION_TYPE, descriptionType);
+        args.putBoolean(REQUEST_SEARCH_DETAILS, searchDetails);
+        args.putString(REQUEST_SEARCH_MODE, searchMode.name());
         ContactFragment fragment = new ContactFragment();
         fragment.setArguments(args);
         return fragment;
@@ -89,6 +111,8 @@ public class ContactFragment extends BaseFragment {
         mPictureType = ContactPictureType.lookup( args.getString(REQUEST_PICTURE_TYPE) );
         mDescription = ContactDescription.lookup( args.getString(REQUEST_CONTACT_DESCRIPTION) );
         mDescriptionType = args.getInt(REQUEST_DESCRIPTION_TYPE);
+        mSearchDetails = args.getBoolean(REQUEST_SEARCH_DETAILS);
+        mSearchMode = SearchMode.lookup( args.getString(REQUEST_SEARCH_MODE) );
     }
 
     @Override
@@ -114,9 +138,24 @@ public class ContactFragment extends BaseFragment {
     public void onEventMainThread(ContactsLoaded event) {
         EventBus.getDefault().removeStickyEvent(event);
 
+        ContactSortOrder sortOrder = event.getSortOrder();
+        if (sortOrder != null && sortOrder != mSortOrder) {
+            mSortOrder = sortOrder;
+            mAdapter.setSortOrder(sortOrder);
+        }
+
+        // the details are part of the search keys (re-posts after a selection change keep the index)
+        Set<Long> changedIds = event.getChangedIds();
+        if (mSearchDetails && (event.isDetailsLoaded() || (changedIds != null && ! changedIds.isEmpty()))) {
+            invalidateSearchIndex();
+        }
+
         mContacts = event.getContacts();
-        mFilteredContacts = mContacts;
-        mAdapter.setData(mFilteredContacts);
+        mContactsLoaded = event;
+        if (! refilter()) {
+            mFilteredContacts = mContacts;
+            mAdapter.setData(mFilteredContacts, event.getDiff());
+        }
 
         updateEmptyViewVisibility(mContacts);
     }
@@ -125,21 +164,36 @@ public class ContactFragment extends BaseFragment {
     protected void checkAll() {
         if (mFilteredContacts == null) return;
 
+        // the contacts are checked by their position in the loaded contacts, so a list that
+        // creates its contacts on demand doesn't have to create all of them
+        List<? extends Contact> contacts = mFilteredContacts;
+        SearchIndex<?>.Result result = null;
+        Object source = contacts;
+        if (contacts instanceof SearchIndex.Result) {
+            result = (SearchIndex<?>.Result) contacts;
+            source = result.getElements();
+        }
+        ContactCheckedList checkedList = source instanceof ContactCheckedList ? (ContactCheckedList) source : null;
+        int size = contacts.size();
+
         // determine if all contacts are checked
         boolean allChecked = true;
-        for (Contact contact : mFilteredContacts) {
-            if (! contact.isChecked()) {
-                allChecked = false;
-                break;
-            }
+        for (int i = 0; i < size && allChecked; i++) {
+            int position = result != null ? result.getElementPosition(i) : i;
+            allChecked = checkedList != null ? checkedList.isChecked(position) : contacts.get(i).isChecked();
         }
 
         // if all are checked then un-check the contacts, otherwise check them all
         boolean isChecked = ! allChecked;
-        for (Contact contact : mFilteredContacts) {
-            if (contact.isChecked() != isChecked) {
-                contact.setChecked(isChecked, true);
-
+        for (int i = 0; i < size; i++) {
+            int position = result != null ? result.getElementPosition(i) : i;
+            if (checkedList != null) {
+                if (checkedList.isChecked(position) != isChecked) {
+                    checkedList.setChecked(position, isChecked);
+                }
+            }
+            else if (contacts.get(i).isChecked() != isChecked) {
+                contacts.get(i).setChecked(isChecked, true);
             }
         }
 
@@ -149,22 +203,48 @@ public class ContactFragment extends BaseFragment {
     }
 
     @Override
-    protected void performFiltering(String[] queryStrings) {
-        if (mContacts == null) return;
+    protected List<? extends Contact> getElements() {
+        return mContacts;
+    }
 
-        if (queryStrings == null || queryStrings.length == 0) {
-            mFilteredContacts = mContacts;
+    @Override
+    protected SearchMode getSearchMode() {
+        return mSearchMode;
+    }
+
+    @Override
+    protected String getSearchKey(Contact contact) {
+        String name = super.getSearchKey(contact);
+        if (! mSearchDetails) return name;
+
+        // name, emails and phone numbers (as digits) separated by line feeds
+        StringBuilder key = new StringBuilder(name);
+        for (String email : contact.getMapEmail().values()) {
+            key.append('\n').append(Helper.normalizeForSearch(email));
         }
-        else {
-            List<Contact> filteredElements = new ArrayList<>();
-            for (Contact contact : mContacts) {
-                if (contact.matchesQuery(queryStrings)) {
-                    filteredElements.add(contact);
-                }
-            }
-            mFilteredContacts = filteredElements;
+        for (String phone : contact.getMapPhone().values()) {
+            key.append('\n').append(Helper.normalizePhoneNumberForSearch(phone));
         }
+        return key.toString();
+    }
+
+    @Override
+    protected int[] getSearchBoosts(List<? extends Contact> contacts) {
+        // computed by the ContactProcessor (favorites first, then the frequently contacted)
+        ContactsLoaded event = mContactsLoaded;
+        return event != null && event.getContacts() == contacts ? event.getSearchBoosts() : null;
+    }
 
+    @Override
+    protected String normalizeQueryString(String queryString) {
+        return mSearchDetails && Helper.isPhoneNumber(queryString) ?
+               Helper.normalizePhoneNumberForSearch(queryString) :
+               queryString;
+    }
+
+    @Override
+    protected void onFilteringDone(List<? extends Contact> filteredElements) {
+        mFilteredContacts = filteredElements;
         mAdapter.setData(mFilteredContacts);
     }
 
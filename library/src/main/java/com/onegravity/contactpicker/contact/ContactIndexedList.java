@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.contact;
+
+/**
+ * Implemented by contact lists that come with a locale aware alphabetic index.
+ * The ContactAdapter uses it as the sections instead of the contact letters.
+ */
+public interface ContactIndexedList {
+
+    /**
+     * @return the section titles in list order or Null if there's no index for the sort order.
+     */
+    String[] getSectionTitles(ContactSortOrder sortOrder);
+
+    /**
+     * @return the number of contacts in each section (parallel to the section titles) or Null
+     * if there's no index for the sort order.
+     */
+    int[] getSectionCounts(ContactSortOrder sortOrder);
+
+}
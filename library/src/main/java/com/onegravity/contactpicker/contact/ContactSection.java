@@ -18,18 +18,30 @@ package com.onegravity.contactpicker.contact;
 
 public class ContactSection {
 
-    private final char mLetter;
+    private final String mTitle;
     private final int mSectionPos;
     private final int mContactPos;
 
     ContactSection(char letter, int sectionPos, int contactPos) {
-        mLetter = letter;
+        this(String.valueOf(letter), sectionPos, contactPos);
+    }
+
+    ContactSection(String title, int sectionPos, int contactPos) {
+        mTitle = title;
         mSectionPos = sectionPos;
         mContactPos = contactPos;
     }
 
     public char getLetter() {
-        return mLetter;
+        return mTitle.isEmpty() ? '?' : mTitle.charAt(0);
+    }
+
+    /**
+     * @return the title of the section, usually a single letter but an alphabetic index can have
+     * longer titles (e.g. "CH" in Czech).
+     */
+    public String getTitle() {
+        return mTitle;
     }
 
     public int getSectionPos() {
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.contact;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.List;
+
+/**
+ * The changes between two contact lists, calculated off the ui thread.
+ * The result can only be applied to the exact list it was calculated for (see getOldContacts).
+ */
+public class ContactsDiff {
+
+    final private List<? extends Contact> mOldContacts;
+    final private DiffUtil.DiffResult mResult;
+
+    public ContactsDiff(List<? extends Contact> oldContacts, DiffUtil.DiffResult result) {
+        mOldContacts = oldContacts;
+        mResult = result;
+    }
+
+    /**
+     * @return the contacts the changes were calculated from.
+     */
+    public List<? extends Contact> getOldContacts() {
+        return mOldContacts;
+    }
+
+    public DiffUtil.DiffResult getResult() {
+        return mResult;
+    }
+
+}
@@ -19,6 +19,7 @@ package com.onegravity.contactpicker.contact;
 import org.greenrobot.eventbus.EventBus;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * All contacts have been loaded (including details).
@@ -29,18 +30,101 @@ import java.util.List;
 public class ContactsLoaded {
 
     public static void post(List<? extends Contact> contacts) {
-        ContactsLoaded event = new ContactsLoaded(contacts);
+        post(contacts, null, null, null, null, false);
+    }
+
+    /**
+     * @param searchBoosts the search boost of each contact (0 - 65535) for SearchMode.RANKED or
+     *                     Null if the contacts aren't ranked.
+     */
+    public static void post(List<? extends Contact> contacts, int[] searchBoosts) {
+        post(contacts, searchBoosts, null, null, null, false);
+    }
+
+    /**
+     * @param changedIds the ids of the contacts that have changed compared to the previously posted
+     *                   contacts or Null if the contacts should be treated as completely new.
+     */
+    public static void post(List<? extends Contact> contacts, Set<Long> changedIds) {
+        post(contacts, changedIds, null);
+    }
+
+    /**
+     * @param sortOrder the order of the contacts or Null if it's the same as before.
+     */
+    public static void post(List<? extends Contact> contacts, Set<Long> changedIds, ContactSortOrder sortOrder) {
+        post(contacts, null, changedIds, null, sortOrder, false);
+    }
+
+    /**
+     * @param diff the changes compared to the previously posted contacts or Null if they haven't
+     *             been calculated.
+     * @param detailsLoaded True if the contact details have been (re)loaded since the contacts
+     *                      were last posted.
+     */
+    public static void post(List<? extends Contact> contacts, int[] searchBoosts, Set<Long> changedIds,
+                            ContactsDiff diff, ContactSortOrder sortOrder, boolean detailsLoaded) {
+        ContactsLoaded event = new ContactsLoaded(contacts, searchBoosts, changedIds, diff, sortOrder, detailsLoaded);
         EventBus.getDefault().postSticky(event);
     }
 
     final private List<? extends Contact> mContacts;
+    final private int[] mSearchBoosts;
+    final private Set<Long> mChangedIds;
+    final private ContactsDiff mDiff;
+    final private ContactSortOrder mSortOrder;
+    final private boolean mDetailsLoaded;
 
-    private ContactsLoaded(List<? extends Contact> contacts) {
+    private ContactsLoaded(List<? extends Contact> contacts, int[] searchBoosts, Set<Long> changedIds,
+                           ContactsDiff diff, ContactSortOrder sortOrder, boolean detailsLoaded) {
         mContacts = contacts;
+        mSearchBoosts = searchBoosts;
+        mChangedIds = changedIds;
+        mDiff = diff;
+        mSortOrder = sortOrder;
+        mDetailsLoaded = detailsLoaded;
     }
 
     public List<? extends Contact> getContacts() {
         return mContacts;
     }
 
+    /**
+     * @return the search boost of each contact (same order as getContacts()) or Null if the
+     * contacts aren't ranked.
+     */
+    public int[] getSearchBoosts() {
+        return mSearchBoosts;
+    }
+
+    /**
+     * @return the ids of the changed contacts or Null if all contacts are new.
+     */
+    public Set<Long> getChangedIds() {
+        return mChangedIds;
+    }
+
+    /**
+     * @return the changes compared to the previously posted contacts or Null if they haven't been
+     * calculated.
+     */
+    public ContactsDiff getDiff() {
+        return mDiff;
+    }
+
+    /**
+     * @return the order of the contacts or Null if it hasn't changed.
+     */
+    public ContactSortOrder getSortOrder() {
+        return mSortOrder;
+    }
+
+    /**
+     * @return True if the contact details have been (re)loaded (the contacts' emails and phone
+     * numbers might have changed).
+     */
+    public boolean isDetailsLoaded() {
+        return mDetailsLoaded;
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.os.Build;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Sorting for the sort orders the contacts provider can't supply (see ContactSorter.isCursorOrder).
+ *
+ * The names are compared by their CollationKey bytes: the key of a name is computed once when
+ * the contact is loaded, afterwards each comparison is a plain (unsigned) byte comparison instead
+ * of a locale aware string comparison. The collator ignores case, like the provider's sort keys.
+ *
+ * Collator instances aren't thread safe, an instance must only be used by one thread.
+ */
+class CollationSort {
+
+    /*
+     * Lists with more elements are sorted in parallel (API 24 and higher).
+     */
+    static final int PARALLEL_SORT_THRESHOLD = 8192;
+
+    private final Collator mCollator;
+
+    CollationSort() {
+        mCollator = Collator.getInstance();
+        mCollator.setStrength(Collator.SECONDARY);
+    }
+
+    byte[] getKey(String name) {
+        return mCollator.getCollationKey(name != null ? name : "").toByteArray();
+    }
+
+    static int compare(byte[] lhs, byte[] rhs) {
+        for (int i = 0, n = Math.min(lhs.length, rhs.length); i < n; i++) {
+            int diff = (lhs[i] & 0xff) - (rhs[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return lhs.length - rhs.length;
+    }
+
+    /**
+     * Sort the array (stable).
+     */
+    static <T> void sort(T[] array, Comparator<? super T> comparator) {
+        if (array.length >= PARALLEL_SORT_THRESHOLD && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            Arrays.parallelSort(array, comparator);
+        }
+        else {
+            Arrays.sort(array, comparator);
+        }
+    }
+
+    private static void sort(long[] array, int fromIndex, int toIndex) {
+        if (toIndex - fromIndex >= PARALLEL_SORT_THRESHOLD && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            Arrays.parallelSort(array, fromIndex, toIndex);
+        }
+        else {
+            Arrays.sort(array, fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * The collation keys of rows 0, 1, 2... appended to a single byte array, so there's no byte[]
+     * per row, and sorted with primitive sorts only.
+     *
+     * The rows are sorted by 3 key bytes at a time: the bytes (each + 1, 0 past the end of the key
+     * so shorter keys sort first) are packed above the row into a long, the longs are sorted and
+     * the runs with the same bytes are sorted by their next 3 bytes. Rows with equal keys end up
+     * in the order of the rows, so the sort is stable.
+     */
+    static class Keys {
+
+        private byte[] mBytes = new byte[1024];
+        private int[] mEnds;
+        private int mSize;
+
+        Keys(int capacity) {
+            mEnds = new int[Math.max(16, capacity)];
+        }
+
+        /**
+         * Append the key of the next row.
+         */
+        void add(byte[] key) {
+            if (mSize == mEnds.length) {
+                mEnds = Arrays.copyOf(mEnds, mSize * 2);
+            }
+            int start = getStart(mSize);
+            if (start + key.length > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, start + key.length));
+            }
+            System.arraycopy(key, 0, mBytes, start, key.length);
+            mEnds[mSize++] = start + key.length;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        private int getStart(int row) {
+            return row == 0 ? 0 : mEnds[row - 1];
+        }
+
+        /**
+         * @return the 3 key bytes of the row from the offset, 9 bits each.
+         */
+        private int getChunk(int row, int offset) {
+            int pos = getStart(row) + offset;
+            int end = mEnds[row];
+            int chunk = 0;
+            for (int i = 0; i < 3; i++, pos++) {
+                chunk = chunk << 9 | (pos < end ? (mBytes[pos] & 0xff) + 1 : 0);
+            }
+            return chunk;
+        }
+
+        /**
+         * Sort the rows by their keys.
+         */
+        void sort(int[] rows) {
+            sort(rows, new long[rows.length], 0, rows.length, 0);
+        }
+
+        private void sort(int[] rows, long[] packed, int from, int to, int offset) {
+            for (int i = from; i < to; i++) {
+                int row = rows[i];
+                packed[i] = (long) getChunk(row, offset) << 32 | row;
+            }
+            CollationSort.sort(packed, from, to);
+            for (int i = from; i < to; i++) {
+                rows[i] = (int) packed[i];
+            }
+
+            // the runs with the same bytes, unless their keys have ended (then they're equal)
+            for (int start = from, end; start < to; start = end) {
+                long chunk = packed[start] >>> 32;
+                end = start + 1;
+                while (end < to && packed[end] >>> 32 == chunk) end++;
+                if (end - start > 1 && (chunk & 0x1ff) != 0) {
+                    sort(rows, packed, start, end, offset + 3);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The contact details (names, emails, phone numbers and addresses) read from the
+ * ContactsContract.Data table.
+ *
+ * A ContactDetails instance is populated by the ContactProcessor thread and attached to its
+ * ContactImpl once all data rows have been read. It's never modified after that which means the
+ * ui thread can read it without any synchronization.
+ *
+ * The emails, phone numbers and addresses are stored as compact TypedValues, a contact without
+ * any of them uses the shared empty instance.
+ */
+class ContactDetails implements Serializable {
+
+    private String mFirstName;
+    private String mLastName;
+    private TypedValues mEmail = TypedValues.EMPTY;
+    private TypedValues mPhone = TypedValues.EMPTY;
+    private TypedValues mAddress = TypedValues.EMPTY;
+
+    String getFirstName() {
+        return mFirstName;
+    }
+
+    String getLastName() {
+        return mLastName;
+    }
+
+    Map<Integer, String> getEmail() {
+        return mEmail;
+    }
+
+    Map<Integer, String> getPhone() {
+        return mPhone;
+    }
+
+    Map<Integer, String> getAddress() {
+        return mAddress;
+    }
+
+    void setFirstName(String value) {
+        mFirstName = value;
+    }
+
+    void setLastName(String value) {
+        mLastName = value;
+    }
+
+    void setEmail(int type, String value) {
+        mEmail = mEmail.with(type, value);
+    }
+
+    void setPhone(int type, String value) {
+        mPhone = mPhone.with(type, value);
+    }
+
+    void setAddress(int type, String value) {
+        mAddress = mAddress.with(type, value);
+    }
+
+    @Override
+    public String toString() {
+        return mFirstName + " " + mLastName + ", " + mEmail;
+    }
+
+}
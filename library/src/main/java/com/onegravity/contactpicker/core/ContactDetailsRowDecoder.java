@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the rows of a ContactsContract.Data cursor into ContactDetails.
+ *
+ * The column indexes are resolved once when the decoder is created, so a decoder instance must
+ * only be used with the cursor it was created for. The MIME type of a row is mapped to the
+ * corresponding decode method with a single table lookup.
+ */
+class ContactDetailsRowDecoder {
+
+    private static final int MIME_EMAIL = 1;
+    private static final int MIME_PHONE = 2;
+    private static final int MIME_ADDRESS = 3;
+    private static final int MIME_NAME = 4;
+
+    private static final Map<String, Integer> MIME_TYPES = new HashMap<>();
+    static {
+        MIME_TYPES.put(Email.CONTENT_ITEM_TYPE, MIME_EMAIL);
+        MIME_TYPES.put(Phone.CONTENT_ITEM_TYPE, MIME_PHONE);
+        MIME_TYPES.put(StructuredPostal.CONTENT_ITEM_TYPE, MIME_ADDRESS);
+        MIME_TYPES.put(StructuredName.CONTENT_ITEM_TYPE, MIME_NAME);
+    }
+
+    private final int mContactIdIndex;
+    private final int mMimeTypeIndex;
+    private final int mEmailIndex;
+    private final int mEmailTypeIndex;
+    private final int mPhoneIndex;
+    private final int mPhoneTypeIndex;
+    private final int mAddressIndex;
+    private final int mAddressTypeIndex;
+    private final int mGivenNameIndex;
+    private final int mFamilyNameIndex;
+
+    ContactDetailsRowDecoder(Cursor cursor) {
+        mContactIdIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+        mMimeTypeIndex = cursor.getColumnIndex(ContactsContract.Data.MIMETYPE);
+        mEmailIndex = cursor.getColumnIndex(Email.ADDRESS);
+        mEmailTypeIndex = cursor.getColumnIndex(Email.TYPE);
+        mPhoneIndex = cursor.getColumnIndex(Phone.NUMBER);
+        mPhoneTypeIndex = cursor.getColumnIndex(Phone.TYPE);
+        mAddressIndex = cursor.getColumnIndex(StructuredPostal.FORMATTED_ADDRESS);
+        mAddressTypeIndex = cursor.getColumnIndex(StructuredPostal.TYPE);
+        mGivenNameIndex = cursor.getColumnIndex(StructuredName.GIVEN_NAME);
+        mFamilyNameIndex = cursor.getColumnIndex(StructuredName.FAMILY_NAME);
+    }
+
+    /**
+     * @return the id of the contact the current row belongs to.
+     */
+    long getContactId(Cursor cursor) {
+        return cursor.getLong(mContactIdIndex);
+    }
+
+    void decode(Cursor cursor, ContactDetails details) {
+        Integer mimeType = MIME_TYPES.get(cursor.getString(mMimeTypeIndex));
+        if (mimeType == null) return;
+
+        switch (mimeType) {
+            case MIME_EMAIL: {
+                String email = cursor.getString(mEmailIndex);
+                if (email != null) {
+                    details.setEmail(cursor.getInt(mEmailTypeIndex), email);
+                }
+                break;
+            }
+            case MIME_PHONE: {
+                String phone = cursor.getString(mPhoneIndex);
+                if (phone != null) {
+                    details.setPhone(cursor.getInt(mPhoneTypeIndex), phone);
+                }
+                break;
+            }
+            case MIME_ADDRESS: {
+                String address = cursor.getString(mAddressIndex);
+                if (address != null) {
+                    details.setAddress(cursor.getInt(mAddressTypeIndex), toSingleLine(address));
+                }
+                break;
+            }
+            case MIME_NAME: {
+                String firstName = cursor.getString(mGivenNameIndex);
+                String lastName = cursor.getString(mFamilyNameIndex);
+                if (firstName != null) details.setFirstName(firstName);
+                if (lastName != null) details.setLastName(lastName);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replaces line breaks with ", " (without the regex overhead of String.replaceAll).
+     */
+    private static String toSingleLine(String address) {
+        int pos = address.indexOf('\n');
+        if (pos < 0) return address;
+
+        StringBuilder builder = new StringBuilder(address.length() + 8);
+        int start = 0;
+        while (pos >= 0) {
+            builder.append(address, start, pos).append(", ");
+            start = pos + 1;
+            pos = address.indexOf('\n', start);
+        }
+        return builder.append(address, start, address.length()).toString();
+    }
+
+}
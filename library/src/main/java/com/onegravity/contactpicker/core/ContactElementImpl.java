@@ -22,7 +22,6 @@ import com.onegravity.contactpicker.OnContactCheckedListener;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * The concrete but abstract implementation of ContactElement.
@@ -33,7 +32,13 @@ abstract class ContactElementImpl implements ContactElement {
     private String mDisplayName;
 
     transient private List<OnContactCheckedListener> mListeners = new ArrayList<>();
-    transient private boolean mChecked = false;
+    transient private volatile boolean mChecked = false;
+
+    /*
+     * Tracks the checked contacts (Null for groups).
+     * If set, it holds the checked state and mChecked is just a copy.
+     */
+    transient private SelectionIndex mSelectionIndex;
 
     ContactElementImpl(long id, String displayName) {
         mId = id;
@@ -56,12 +61,14 @@ abstract class ContactElementImpl implements ContactElement {
 
     @Override
     public boolean isChecked() {
-        return mChecked;
+        SelectionIndex selectionIndex = mSelectionIndex;
+        return selectionIndex != null ? selectionIndex.contains(mId) : mChecked;
     }
 
     @Override
     public void setChecked(boolean checked, boolean suppressListenerCall) {
-        boolean wasChecked = mChecked;
+        SelectionIndex selectionIndex = mSelectionIndex;
+        boolean wasChecked = selectionIndex != null ? selectionIndex.setChecked(mId, checked) : mChecked;
         mChecked = checked;
         if (!mListeners.isEmpty() && wasChecked != checked && !suppressListenerCall) {
             for (OnContactCheckedListener listener : mListeners) {
@@ -70,6 +77,18 @@ abstract class ContactElementImpl implements ContactElement {
         }
     }
 
+    /**
+     * From then on the checked state is the one in the SelectionIndex, so an instance replacing
+     * another one of the same contact (e.g. after it has been updated) is always in sync with it.
+     */
+    void setSelectionIndex(SelectionIndex selectionIndex) {
+        mSelectionIndex = selectionIndex;
+    }
+
+    SelectionIndex getSelectionIndex() {
+        return mSelectionIndex;
+    }
+
     @Override
     public void addOnContactCheckedListener(OnContactCheckedListener listener) {
         mListeners.add(listener);
@@ -77,12 +96,11 @@ abstract class ContactElementImpl implements ContactElement {
 
     @Override
     public boolean matchesQuery(String[] queryStrings) {
-        String dispName = getDisplayName();
-        if (Helper.isNullOrEmpty(dispName)) return false;
+        String searchKey = Helper.normalizeForSearch(getDisplayName());
+        if (searchKey.isEmpty()) return false;
 
-        dispName = dispName.toLowerCase(Locale.getDefault());
         for (String queryString : queryStrings) {
-            if (!dispName.contains(queryString)) {
+            if (!searchKey.contains(Helper.normalizeForSearch(queryString))) {
                 return false;
             }
         }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+/**
+ * Implemented by contact lists that create their contacts on demand (see ContactStore), so the
+ * id, the sort keys and the search boost of a contact can be looked up without creating it.
+ */
+interface ContactIdList {
+
+    /**
+     * @return the same as get(position).getId().
+     */
+    long getContactId(int position);
+
+    /**
+     * @return the same as get(position).getSearchBoost().
+     */
+    int getSearchBoost(int position);
+
+    /**
+     * @return the same as get(position).getSortKey(sortOrder).
+     */
+    String getSortKey(int position, ContactSortOrder sortOrder);
+
+    /**
+     * @return the contact if it has been created, otherwise a new instance initialized by the
+     * factory which isn't kept by the list.
+     */
+    ContactImpl getUncachedContact(int position, ContactStore.ContactFactory factory);
+
+}
@@ -16,16 +16,14 @@
 
 package com.onegravity.contactpicker.core;
 
-import android.database.Cursor;
 import android.net.Uri;
-import android.provider.ContactsContract;
 
 import com.onegravity.contactpicker.Helper;
 import com.onegravity.contactpicker.contact.Contact;
 import com.onegravity.contactpicker.contact.ContactSortOrder;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -65,90 +63,125 @@ public class ContactImpl extends ContactElementImpl implements Contact {
             0xff607D8B
     };
 
-    static ContactImpl fromCursor(Cursor cursor) {
-        long id = cursor.getLong(cursor.getColumnIndex(ContactsContract.Contacts._ID));
-        String lookupKey = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY));
-        String displayName = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME_PRIMARY));
-        String[] names = displayName != null ? displayName.split("\\s+") : new String[]{"---", "---"};
-        String firstName = names.length >= 1 ? names[0] : displayName;
-        String lastName = names.length >= 2 ? names[1] : "";
-        String photoUri = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI));
-        Uri uri = photoUri != null ? Uri.parse(photoUri) : null;
-        return new ContactImpl(id, lookupKey, displayName, firstName, lastName, uri);
-    }
-
     final private String mLookupKey;
-    private String mFirstName = "";
-    private String mLastName = "";
-    private Map<Integer, String> mEmail = new HashMap<>();
-    private Map<Integer, String> mPhone = new HashMap<>();
-    private Map<Integer, String> mAddress = new HashMap<>();
+    final private String mFirstName;
+    final private String mLastName;
     private String mPhotoUri;
-    private Set<Long> mGroupIds = new HashSet<>();
+
+    /*
+     * The sort keys computed by the contacts provider (SORT_KEY_PRIMARY and SORT_KEY_ALTERNATIVE).
+     */
+    final private String mSortKeyPrimary;
+    final private String mSortKeyAlternative;
+
+    /*
+     * The details are set by the ContactProcessor thread once they have been read completely.
+     * Until then the first and last name derived from the display name are used.
+     */
+    private volatile ContactDetails mDetails;
+
+    /*
+     * The group memberships are loaded separately (and only if there's a group tab).
+     * The set is replaced by the ContactProcessor thread, never modified.
+     */
+    private volatile LongArraySet mGroupIds = LongArraySet.EMPTY;
+
+    /*
+     * Set by the ContactProcessor thread right after the contact is created.
+     */
+    private boolean mStarred;
+    private int mTimesContacted;
 
     private char mContactLetterBadge;
-    private char mContactLetterScroll;
-    private Integer mContactColor;
+    /*
+     * The contact letter for the fast scroll sections and the sort order it belongs to in one int
+     * ((sortOrder.ordinal() + 1) << 16 | letter) so it's read and written atomically (0 = not
+     * calculated yet).
+     */
+    private volatile int mContactLetterScroll;
+    private int mContactColor;    // 0 = not calculated yet (all colors are opaque)
 
-    protected ContactImpl(long id, String lookupKey, String displayName, String firstName, String lastName, Uri photoUri) {
+    protected ContactImpl(long id, String lookupKey, String displayName, String firstName, String lastName,
+                          String photoUri, String sortKeyPrimary, String sortKeyAlternative) {
         super(id, displayName);
 
         mLookupKey = lookupKey;
         mFirstName = Helper.isNullOrEmpty(firstName) ? "---" : firstName;
         mLastName = Helper.isNullOrEmpty(lastName) ? "---" : lastName;
-        setPhotoUri(photoUri);
+        mPhotoUri = photoUri;
+        mSortKeyPrimary = sortKeyPrimary;
+        mSortKeyAlternative = sortKeyAlternative;
+    }
+
+    /**
+     * @return the key the contacts are sorted by: SORT_KEY_ALTERNATIVE for ContactSortOrder.LAST_NAME
+     * (derived from the "family name first" display name), SORT_KEY_PRIMARY for AUTOMATIC.
+     * Falls back to the display name if the provider didn't return a sort key.
+     * The first name order has no provider sort key, its key is the first and last name as read
+     * from the contacts cursor (so it doesn't change once the details have loaded).
+     */
+    String getSortKey(ContactSortOrder sortOrder) {
+        if (sortOrder == ContactSortOrder.FIRST_NAME) {
+            return mFirstName + " " + mLastName;
+        }
+
+        String sortKey = sortOrder == ContactSortOrder.LAST_NAME ? mSortKeyAlternative : mSortKeyPrimary;
+        return Helper.isNullOrEmpty(sortKey) ? getDisplayName() : sortKey;
     }
 
     @Override
     public String getFirstName() {
-        return mFirstName;
+        ContactDetails details = mDetails;
+        String firstName = details != null ? details.getFirstName() : null;
+        return firstName != null ? firstName : mFirstName;
     }
 
     @Override
     public String getLastName() {
-        return mLastName;
+        ContactDetails details = mDetails;
+        String lastName = details != null ? details.getLastName() : null;
+        return lastName != null ? lastName : mLastName;
     }
 
     @Override
     public String getEmail(int type) {
-        String email = mEmail.get(type);
-        if (email == null && !mEmail.isEmpty()) {
-            email = "";
-        }
-        return email;
+        return getValue(getMapEmail(), type);
     }
 
     @Override
     public Map<Integer, String> getMapEmail() {
-        return mEmail;
+        ContactDetails details = mDetails;
+        return details != null ? details.getEmail() : TypedValues.EMPTY;
     }
 
     @Override
     public String getPhone(int type) {
-        String phone = mPhone.get(type);
-        if (phone == null && !mPhone.isEmpty()) {
-            phone = "";
-        }
-        return phone;
+        return getValue(getMapPhone(), type);
     }
 
     @Override
     public Map<Integer, String> getMapPhone() {
-        return mPhone;
+        ContactDetails details = mDetails;
+        return details != null ? details.getPhone() : TypedValues.EMPTY;
     }
 
     @Override
     public String getAddress(int type) {
-        String address = mAddress.get(type);
-        if (address == null && !mAddress.isEmpty()) {
-            address = "";
-        }
-        return address;
+        return getValue(getMapAddress(), type);
     }
 
     @Override
     public Map<Integer, String> getMapAddress() {
-        return mAddress;
+        ContactDetails details = mDetails;
+        return details != null ? details.getAddress() : TypedValues.EMPTY;
+    }
+
+    private String getValue(Map<Integer, String> values, int type) {
+        String value = values.get(type);
+        if (value == null && !values.isEmpty()) {
+            value = "";
+        }
+        return value;
     }
 
     @Override
@@ -162,25 +195,34 @@ public class ContactImpl extends ContactElementImpl implements Contact {
         return mContactLetterBadge;
     }
 
+    /**
+     * The letter is the first letter of the sort key so the sections follow the sort order.
+     */
     @Override
     public char getContactLetter(ContactSortOrder sortOrder) {
-        if (mContactLetterScroll == 0) {
-            String name;
-            switch (sortOrder) {
-                case FIRST_NAME: name = getFirstName(); break;
-                case LAST_NAME: name = getLastName(); break;
-                default: name = getDisplayName(); break;
-            }
-            mContactLetterScroll = Helper.isNullOrEmpty(name) ? '?' :
-                    name.toUpperCase(Locale.getDefault()).charAt(0);
+        int letter = mContactLetterScroll;
+        if (letter >>> 16 != sortOrder.ordinal() + 1) {
+            String name = getSortKey(sortOrder);
+            char c = Helper.isNullOrEmpty(name) ? '?' : toContactLetter(name.charAt(0));
+            letter = (sortOrder.ordinal() + 1) << 16 | c;
+            mContactLetterScroll = letter;
         }
 
-        return mContactLetterScroll;
+        return (char) letter;
+    }
+
+    /**
+     * @return the section letter for a sort key starting with the given character (the character
+     * in upper case, using the default locale's rules). Used by ContactStore too, so a contact
+     * has the same letter whether it has been created or not.
+     */
+    static char toContactLetter(char firstChar) {
+        return String.valueOf(firstChar).toUpperCase(Locale.getDefault()).charAt(0);
     }
 
     @Override
     public int getContactColor() {
-        if (mContactColor == null) {
+        if (mContactColor == 0) {
             String key = getDisplayName();
             int value = Helper.isNullOrEmpty(key) ? hashCode() : key.hashCode();
             mContactColor = CONTACT_COLORS_MATERIAL[Math.abs(value) % CONTACT_COLORS_MATERIAL.length];
@@ -200,6 +242,42 @@ public class ContactImpl extends ContactElementImpl implements Contact {
         return mLookupKey;
     }
 
+    /**
+     * @return True if the contact is a favorite (ContactsContract.Contacts.STARRED).
+     */
+    boolean isStarred() {
+        return mStarred;
+    }
+
+    /**
+     * @return how often the contact has been contacted (ContactsContract.Contacts.TIMES_CONTACTED,
+     * always 0 on Android 10 and higher).
+     */
+    int getTimesContacted() {
+        return mTimesContacted;
+    }
+
+    /**
+     * @return the boost of the contact in SearchMode.RANKED (see getSearchBoost(boolean, int)).
+     */
+    int getSearchBoost() {
+        return getSearchBoost(mStarred, mTimesContacted);
+    }
+
+    /**
+     * @return the search boost of a contact (0 - 65535): favorites first, then by how often they
+     * have been contacted (TIMES_CONTACTED is always 0 on Android 10 and higher so there only the
+     * favorites are boosted).
+     */
+    static int getSearchBoost(boolean starred, int timesContacted) {
+        return (starred ? 0x8000 : 0) | Math.min(timesContacted, 0x7fff);
+    }
+
+    void setUsage(boolean starred, int timesContacted) {
+        mStarred = starred;
+        mTimesContacted = timesContacted;
+    }
+
     @Override
     public Uri getPhotoUri() {
         return mPhotoUri != null ? Uri.parse(mPhotoUri) : null;
@@ -210,37 +288,41 @@ public class ContactImpl extends ContactElementImpl implements Contact {
         return mGroupIds;
     }
 
-    protected void setFirstName(String value) {
-        mFirstName = value;
-    }
-
-    protected void setLastName(String value) {
-        mLastName = value;
+    protected void setPhotoUri(Uri photoUri) {
+        mPhotoUri = photoUri != null ? photoUri.toString() : null;
     }
 
-    protected void setEmail(int type, String value) {
-        mEmail.put(type, value);
+    ContactDetails getDetails() {
+        return mDetails;
     }
 
-    protected void setPhone(int type, String value) {
-        mPhone.put(type, value);
+    /**
+     * Must only be called with a ContactDetails instance that won't be modified any more.
+     */
+    void setDetails(ContactDetails details) {
+        mDetails = details;
     }
 
-    protected void setAddress(int type, String value) {
-        mAddress.put(type, value);
+    LongArraySet getGroupIdSet() {
+        return mGroupIds;
     }
 
-    protected void setPhotoUri(Uri photoUri) {
-        mPhotoUri = photoUri != null ? photoUri.toString() : null;
+    void setGroupIds(LongArraySet groupIds) {
+        mGroupIds = groupIds != null ? groupIds : LongArraySet.EMPTY;
     }
 
-    void addGroupId(long value) {
-        mGroupIds.add(value);
+    /**
+     * @return the groups this contact belongs to (the ones that have loaded).
+     */
+    List<GroupImpl> getGroups() {
+        SelectionIndex selectionIndex = getSelectionIndex();
+        GroupMembership membership = selectionIndex != null ? selectionIndex.getMembership() : null;
+        return membership != null ? membership.getGroups(getId()) : Collections.<GroupImpl>emptyList();
     }
 
     @Override
     public String toString() {
-        return super.toString() + ", " + mFirstName + " " + mLastName + ", " + mEmail;
+        return super.toString() + ", " + getFirstName() + " " + getLastName() + ", " + getMapEmail();
     }
 
 }
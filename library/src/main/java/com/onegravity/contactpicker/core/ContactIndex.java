@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.icu.text.AlphabeticIndex;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The alphabetic index of a sorted contact list: the section titles and the number of contacts
+ * in each section (in list order).
+ *
+ * The index comes either with the contacts cursor (ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX,
+ * API 21 and higher) or is built with ICU's AlphabeticIndex (API 24 and higher). Both bucket the
+ * names according to the locale (e.g. Japanese names by kana row, accented Latin letters in the
+ * section of the base letter), which a plain "first letter" can't do.
+ */
+class ContactIndex {
+
+    private final String[] mTitles;
+    private final int[] mCounts;
+
+    private ContactIndex(String[] titles, int[] counts) {
+        mTitles = titles;
+        mCounts = counts;
+    }
+
+    /**
+     * @return the index the contacts provider returned with the cursor or Null if there's none.
+     */
+    static ContactIndex fromCursor(Cursor cursor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+
+        Bundle extras = cursor.getExtras();
+        if (extras == null) return null;
+
+        String[] titles = extras.getStringArray(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES);
+        int[] counts = extras.getIntArray(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS);
+        return titles != null && counts != null && titles.length == counts.length ?
+               new ContactIndex(titles, counts) : null;
+    }
+
+    /**
+     * Build the index of contacts sorted by the given sort order.
+     *
+     * @return the index or Null if it can't be built on this device (API 23 and lower).
+     */
+    static ContactIndex build(List<ContactImpl> contacts, ContactSortOrder sortOrder) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? buildIcu(contacts, sortOrder) : null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private static ContactIndex buildIcu(List<ContactImpl> contacts, ContactSortOrder sortOrder) {
+        // like the contacts provider: the labels of the default locale plus the Latin ones
+        AlphabeticIndex.ImmutableIndex<?> index = new AlphabeticIndex<>(Locale.getDefault())
+                .addLabels(Locale.ENGLISH)
+                .buildImmutableIndex();
+
+        String[] titles = new String[16];
+        int[] counts = new int[16];
+        int nrOfSections = 0;
+        int prevBucket = -1;
+        for (int pos = 0, size = contacts.size(); pos < size; pos++) {
+            int bucket = index.getBucketIndex(ContactStore.getSortKey(contacts, pos, sortOrder));
+            if (bucket != prevBucket || nrOfSections == 0) {
+                if (nrOfSections == titles.length) {
+                    titles = Arrays.copyOf(titles, nrOfSections * 2);
+                    counts = Arrays.copyOf(counts, nrOfSections * 2);
+                }
+                titles[nrOfSections++] = index.getBucket(bucket).getLabel();
+                prevBucket = bucket;
+            }
+            counts[nrOfSections - 1]++;
+        }
+
+        return new ContactIndex(Arrays.copyOf(titles, nrOfSections), Arrays.copyOf(counts, nrOfSections));
+    }
+
+    /**
+     * @return True if the index covers exactly the given number of contacts.
+     */
+    boolean fits(int nrOfContacts) {
+        int total = 0;
+        for (int count : mCounts) {
+            total += count;
+        }
+        return total == nrOfContacts;
+    }
+
+    String[] getTitles() {
+        return mTitles;
+    }
+
+    int[] getCounts() {
+        return mCounts;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.ContactCheckedList;
+import com.onegravity.contactpicker.contact.ContactIndexedList;
+import com.onegravity.contactpicker.contact.ContactLetterList;
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The ContactOrderings hold the contacts in all sort orders so the sort order can be switched at
+ * runtime without sorting the contacts again.
+ *
+ * Each sort order is a permutation of the contacts list it was built from (an int[] of positions)
+ * plus the contact letter of every position and the alphabetic index (if there's one), so the
+ * ContactAdapter can calculate the sections without calling into the contacts. An instance is
+ * built by the ContactProcessor thread and never modified afterwards.
+ */
+class ContactOrderings {
+
+    private static final ContactSortOrder[] SORT_ORDERS = ContactSortOrder.values();
+
+    private final List<ContactImpl> mContacts;
+    private final List<ContactImpl>[] mOrderedContacts;
+
+    /**
+     * @param contacts the contacts sorted by sortOrder (with their ContactIndex if they have one).
+     */
+    @SuppressWarnings("unchecked")
+    ContactOrderings(List<ContactImpl> contacts, ContactSortOrder sortOrder) {
+        mContacts = contacts;
+        mOrderedContacts = new List[SORT_ORDERS.length];
+
+        int size = contacts.size();
+        CollationSort collationSort = null;
+        for (ContactSortOrder order : SORT_ORDERS) {
+            int[] positions = new int[size];
+            if (order == sortOrder) {
+                for (int pos = 0; pos < size; pos++) {
+                    positions[pos] = pos;
+                }
+            }
+            else {
+                if (collationSort == null) collationSort = new CollationSort();
+                sort(contacts, order, collationSort, positions);
+            }
+
+            char[] letters = new char[size];
+            for (int pos = 0; pos < size; pos++) {
+                letters[pos] = ContactStore.getContactLetter(contacts, positions[pos], order);
+            }
+
+            ContactIndex index = order == sortOrder ? IndexedContactList.getIndex(contacts) : null;
+            OrderedList orderedList = new OrderedList(positions, letters, order);
+            if (index == null) {
+                index = ContactIndex.build(orderedList, order);
+            }
+            orderedList.mIndex = index != null && index.fits(size) ? index : null;
+            mOrderedContacts[order.ordinal()] = orderedList;
+        }
+    }
+
+    /**
+     * Sort the contacts by the collation keys of their sort keys (read without creating the
+     * contacts of a ContactStore).
+     */
+    private static void sort(List<ContactImpl> contacts, ContactSortOrder order,
+                             CollationSort collationSort, int[] positions) {
+        int size = contacts.size();
+        CollationSort.Keys keys = new CollationSort.Keys(size);
+        for (int pos = 0; pos < size; pos++) {
+            keys.add(collationSort.getKey(ContactStore.getSortKey(contacts, pos, order)));
+            positions[pos] = pos;
+        }
+        keys.sort(positions);
+    }
+
+    /**
+     * @return True if these orderings were built from the given contacts list.
+     */
+    boolean isFor(List<ContactImpl> contacts) {
+        return mContacts == contacts;
+    }
+
+    /**
+     * @param searchBoosts the search boosts of the contacts the orderings were built from.
+     * @return the search boosts of the contacts in the given sort order (Null if there are none).
+     */
+    int[] getSearchBoosts(ContactSortOrder sortOrder, int[] searchBoosts) {
+        if (searchBoosts == null) return null;
+
+        int[] positions = ((OrderedList) mOrderedContacts[sortOrder.ordinal()]).mPositions;
+        int[] boosts = new int[positions.length];
+        for (int pos = 0; pos < positions.length; pos++) {
+            boosts[pos] = searchBoosts[positions[pos]];
+        }
+        return boosts;
+    }
+
+    /**
+     * @return the contacts in the given sort order (always the same instance for the same order).
+     */
+    List<ContactImpl> getContacts(ContactSortOrder sortOrder) {
+        return mOrderedContacts[sortOrder.ordinal()];
+    }
+
+    private class OrderedList extends AbstractList<ContactImpl>
+            implements RandomAccess, ContactLetterList, ContactIndexedList, ContactIdList, ContactCheckedList {
+
+        private final int[] mPositions;
+        private final char[] mLetters;
+        private final ContactSortOrder mSortOrder;
+        private ContactIndex mIndex;
+
+        private OrderedList(int[] positions, char[] letters, ContactSortOrder sortOrder) {
+            mPositions = positions;
+            mLetters = letters;
+            mSortOrder = sortOrder;
+        }
+
+        @Override
+        public ContactImpl get(int position) {
+            return mContacts.get(mPositions[position]);
+        }
+
+        @Override
+        public int size() {
+            return mPositions.length;
+        }
+
+        @Override
+        public char getContactLetter(int position, ContactSortOrder sortOrder) {
+            return sortOrder == mSortOrder ?
+                   mLetters[position] :
+                   ContactStore.getContactLetter(mContacts, mPositions[position], sortOrder);
+        }
+
+        @Override
+        public long getContactId(int position) {
+            return ContactStore.getContactId(mContacts, mPositions[position]);
+        }
+
+        @Override
+        public int getSearchBoost(int position) {
+            return ContactStore.getSearchBoost(mContacts, mPositions[position]);
+        }
+
+        @Override
+        public String getSortKey(int position, ContactSortOrder sortOrder) {
+            return ContactStore.getSortKey(mContacts, mPositions[position], sortOrder);
+        }
+
+        @Override
+        public ContactImpl getUncachedContact(int position, ContactStore.ContactFactory factory) {
+            return ContactStore.getUncachedContact(mContacts, mPositions[position], factory);
+        }
+
+        @Override
+        public boolean isChecked(int position) {
+            return ContactStore.isChecked(mContacts, mPositions[position]);
+        }
+
+        @Override
+        public void setChecked(int position, boolean checked) {
+            ContactStore.setChecked(mContacts, mPositions[position], checked);
+        }
+
+        @Override
+        public String[] getSectionTitles(ContactSortOrder sortOrder) {
+            return sortOrder == mSortOrder && mIndex != null ? mIndex.getTitles() : null;
+        }
+
+        @Override
+        public int[] getSectionCounts(ContactSortOrder sortOrder) {
+            return sortOrder == mSortOrder && mIndex != null ? mIndex.getCounts() : null;
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.ContactsContract;
 import android.util.Log;
@@ -35,10 +36,12 @@ import android.widget.Toast;
 import com.google.android.material.tabs.TabLayout;
 import com.onegravity.contactpicker.OnContactCheckedListener;
 import com.onegravity.contactpicker.R;
+import com.onegravity.contactpicker.SearchMode;
 import com.onegravity.contactpicker.contact.Contact;
 import com.onegravity.contactpicker.contact.ContactDescription;
 import com.onegravity.contactpicker.contact.ContactSelectionChanged;
 import com.onegravity.contactpicker.contact.ContactSortOrder;
+import com.onegravity.contactpicker.contact.ContactsDiff;
 import com.onegravity.contactpicker.contact.ContactsLoaded;
 import com.onegravity.contactpicker.group.Group;
 import com.onegravity.contactpicker.group.GroupsLoaded;
@@ -48,16 +51,14 @@ import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
+import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal.FORMATTED_ADDRESS;
 
@@ -89,6 +90,8 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
     /**
      * Use this to define what contact information is used for the description field (second line).
+     * Only this kind of contact information is loaded, e.g. the returned contacts have no email
+     * addresses if the description is PHONE.
      *
      * {@link com.onegravity.contactpicker.contact.ContactDescription}
      */
@@ -123,6 +126,53 @@ public class ContactPickerActivity extends AppCompatActivity implements
      */
     public static final String EXTRA_WITH_GROUP_TAB = "EXTRA_WITH_GROUP_TAB";
 
+    /**
+     * This parameter sets a boolean to keep a snapshot of the contacts in the app's cache
+     * directory. The snapshot is shown right away when the contact picker is started and then
+     * replaced by the contacts from the contacts provider once they have loaded.
+     * By default, the retrieved value is false
+     */
+    public static final String EXTRA_PERSISTENT_SNAPSHOT = "EXTRA_PERSISTENT_SNAPSHOT";
+
+    /**
+     * This parameter sets a boolean to keep the contacts in a compact columnar store while they are
+     * loaded. The individual contacts are then only created once they are shown (or needed for
+     * searching, the group tab or the result). This reduces memory and garbage collection overhead
+     * for very large address books.
+     * By default, the retrieved value is false
+     */
+    public static final String EXTRA_COLUMNAR_CONTACT_STORE = "EXTRA_COLUMNAR_CONTACT_STORE";
+
+    /**
+     * This parameter sets the boolean which decides whether to show a menu to switch the sort
+     * order of the contacts (display name, first name, last name). The contacts are sorted in all
+     * sort orders once they have loaded so switching doesn't need to sort or load them again.
+     * By default, the retrieved value is false
+     */
+    public static final String EXTRA_SORT_ORDER_SWITCHER = "EXTRA_SORT_ORDER_SWITCHER";
+
+    /**
+     * This parameter sets the boolean which decides whether the contacts can also be found by
+     * their phone numbers and emails (not just by their name). Phone numbers are matched by their
+     * digits so "555-12" finds "(555) 1234". The phone numbers and emails are loaded regardless
+     * of the EXTRA_CONTACT_DESCRIPTION.
+     * By default, the retrieved value is false
+     */
+    public static final String EXTRA_SEARCH_CONTACT_DETAILS = "EXTRA_SEARCH_CONTACT_DETAILS";
+
+    /**
+     * Use this to define how the contacts are searched: by a part of their name (NAME) or dialer
+     * style by word starts, initials and keypad digits (INITIALS) or by a part of their name with
+     * typo tolerance and the best matches first (RANKED).
+     * RANKED lists favorites and frequently contacted contacts first among equally good matches.
+     * Note that Android 10 (API 29) and higher always report 0 as TIMES_CONTACTED, so there only
+     * the favorites are ranked higher.
+     * By default, the retrieved value is NAME
+     *
+     * {@link com.onegravity.contactpicker.SearchMode}
+     */
+    public static final String EXTRA_SEARCH_MODE = "EXTRA_SEARCH_MODE";
+
     /**
      * This defines which type is shown in the description. It refines the EXTRA_CONTACT_DESCRIPTION
      * parameter and uses the android.provider.ContactsContract.CommonDataKinds values
@@ -208,15 +258,13 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
     private Boolean mShowCheckAll = true;
 
-    // update the adapter after a certain amount of contacts has loaded
-    private static final int BATCH_SIZE = 50;
-
     /*
-     * The selected ids are saved in onSaveInstanceState, restored in onCreate and then applied to
-     * the contacts and groups in onLoadFinished.
+     * The selected ids are saved in onSaveInstanceState and restored in onCreate.
+     * The selected contacts are tracked by mSelectionIndex right from the start (the preselected
+     * or restored ids are put into it in onCreate), the selected group ids are applied to the
+     * groups in onLoadFinished.
      */
     private static final String CONTACT_IDS = "CONTACT_IDS";
-    private HashSet<Long> mSelectedContactIds = new HashSet<>();
 
     private static final String GROUP_IDS = "GROUP_IDS";
     private HashSet<Long> mSelectedGroupIds = new HashSet<>();
@@ -226,6 +274,30 @@ public class ContactPickerActivity extends AppCompatActivity implements
     private Boolean mOnlyWithPhoneNumbers = false;
     private Boolean mWithGroupTab = true;
 
+    /*
+     * The groups are loaded lazily: never without a group tab and otherwise only once the group
+     * tab is shown for the first time (or right away if groups are preselected because we need
+     * them for the result).
+     */
+    private static final String LOAD_GROUPS = "LOAD_GROUPS";
+    private boolean mLoadGroups;
+
+    private static final String SNAPSHOT_FILE_NAME = "cp_contact_snapshot";
+    private boolean mUseSnapshot;
+
+    /*
+     * mSortOrder is the sort order the user picked, mLoadedSortOrder the one the contacts are
+     * loaded in (the one picked when the activity was first created). Both are saved: after a
+     * configuration change the retained loader still queries in the loaded sort order.
+     */
+    private static final String SORT_ORDER = "SORT_ORDER";
+    private static final String LOADED_SORT_ORDER = "LOADED_SORT_ORDER";
+    private ContactSortOrder mLoadedSortOrder = ContactSortOrder.AUTOMATIC;
+    private boolean mShowSortOrderSwitcher;
+
+    private boolean mSearchContactDetails;
+    private SearchMode mSearchMode;
+
     // ****************************************** Lifecycle Methods *******************************************
 
     @Override
@@ -263,7 +335,7 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
             if(intent.hasExtra(EXTRA_PRESELECTED_CONTACTS)) {
                 Collection<Long> preselectedContacts = (Collection<Long>) intent.getSerializableExtra( EXTRA_PRESELECTED_CONTACTS );
-                mSelectedContactIds.addAll(preselectedContacts);
+                mSelectionIndex.addAll(preselectedContacts);
             }
 
             if(intent.hasExtra(EXTRA_PRESELECTED_GROUPS)) {
@@ -280,10 +352,12 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
             // Retrieve selected contact and group ids.
             try {
-                mSelectedContactIds = (HashSet<Long>) savedInstanceState.getSerializable(CONTACT_IDS);
+                mSelectionIndex.addAll((HashSet<Long>) savedInstanceState.getSerializable(CONTACT_IDS));
                 mSelectedGroupIds = (HashSet<Long>) savedInstanceState.getSerializable(GROUP_IDS);
             }
             catch (ClassCastException ignore) {}
+
+            mLoadGroups = savedInstanceState.getBoolean(LOAD_GROUPS);
         }
 
         /*
@@ -311,6 +385,27 @@ public class ContactPickerActivity extends AppCompatActivity implements
          * Retrieve mWithGroupTab.
          */
         mWithGroupTab = intent.getBooleanExtra(EXTRA_WITH_GROUP_TAB, true);
+        mLoadGroups = mWithGroupTab && (mLoadGroups || ! mSelectedGroupIds.isEmpty());
+
+        /*
+         * Retrieve UseSnapshot.
+         */
+        mUseSnapshot = intent.getBooleanExtra(EXTRA_PERSISTENT_SNAPSHOT, false);
+
+        /*
+         * Retrieve ShowSortOrderSwitcher.
+         */
+        mShowSortOrderSwitcher = intent.getBooleanExtra(EXTRA_SORT_ORDER_SWITCHER, false);
+
+        /*
+         * Retrieve SearchContactDetails.
+         */
+        mSearchContactDetails = intent.getBooleanExtra(EXTRA_SEARCH_CONTACT_DETAILS, false);
+
+        /*
+         * Retrieve SearchMode.
+         */
+        mSearchMode = SearchMode.lookup(intent.getStringExtra(EXTRA_SEARCH_MODE));
 
         /*
          * Retrieve LimitReachedMessage.
@@ -334,7 +429,15 @@ public class ContactPickerActivity extends AppCompatActivity implements
          * Retrieve ContactSortOrder.
          */
         enumName = intent.getStringExtra(EXTRA_CONTACT_SORT_ORDER);
+        if (savedInstanceState != null && savedInstanceState.containsKey(SORT_ORDER)) {
+            // the sort order might have been switched
+            enumName = savedInstanceState.getString(SORT_ORDER);
+        }
         mSortOrder = ContactSortOrder.lookup(enumName);
+        mLoadedSortOrder = mSortOrder;
+        if (savedInstanceState != null && savedInstanceState.containsKey(LOADED_SORT_ORDER)) {
+            mLoadedSortOrder = ContactSortOrder.lookup(savedInstanceState.getString(LOADED_SORT_ORDER));
+        }
 
         setTheme(mThemeResId);
 
@@ -344,6 +447,20 @@ public class ContactPickerActivity extends AppCompatActivity implements
             return;
         }
 
+        ContactSnapshot snapshot = null;
+        if (mUseSnapshot) {
+            snapshot = new ContactSnapshot(new File(getCacheDir(), SNAPSHOT_FILE_NAME), getSnapshotKey());
+        }
+        boolean useContactStore = intent.getBooleanExtra(EXTRA_COLUMNAR_CONTACT_STORE, false);
+        mProcessor = new ContactProcessor(mLoadedSortOrder, mContactListener, mGroupListener, mProcessorCallback,
+                                          mSelectionIndex, snapshot, useContactStore, mShowSortOrderSwitcher,
+                                          mSearchMode == SearchMode.RANKED);
+        mProcessor.setShownSortOrder(mSortOrder);
+        if (savedInstanceState == null) {
+            // after a configuration change the loaders deliver their cursors right away
+            mProcessor.processSnapshot();
+        }
+
         setContentView(R.layout.cp_contact_tab_layout);
 
         // initialize TabLayout
@@ -364,9 +481,19 @@ public class ContactPickerActivity extends AppCompatActivity implements
         // initialize ViewPager
         final ViewPager viewPager = (ViewPager) findViewById(R.id.tabPager);
         mAdapter = new PagerAdapter(getSupportFragmentManager(), tabLayout.getTabCount(),
-                mSortOrder, mBadgeType, mDescription, mDescriptionType);
+                mSortOrder, mBadgeType, mDescription, mDescriptionType, mSearchContactDetails, mSearchMode);
         viewPager.setAdapter(mAdapter);
         viewPager.addOnPageChangeListener(new TabLayout.TabLayoutOnPageChangeListener(tabLayout));
+        if (mWithGroupTab) {
+            viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+                @Override
+                public void onPageSelected(int position) {
+                    if (position == 1) {
+                        loadGroups();
+                    }
+                }
+            });
+        }
 
         tabLayout.setOnTabSelectedListener(new TabLayout.OnTabSelectedListener() {
             @Override
@@ -386,8 +513,38 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
         EventBus.getDefault().register(this);
 
+        // all queries run concurrently, the ContactProcessor joins the results once they arrive
         getSupportLoaderManager().initLoader(CONTACTS_LOADER_ID, null, this);
+        getSupportLoaderManager().initLoader(CONTACT_DETAILS_LOADER_ID, null, this);
+        if (mLoadGroups) {
+            loadGroups();
+        }
+    }
+
+    /**
+     * The snapshot is only valid for the same query: everything that determines which contacts
+     * and which of their details are loaded (and in what order) is part of the key.
+     */
+    private String getSnapshotKey() {
+        StringBuilder key = new StringBuilder();
+        key.append(mOnlyWithPhoneNumbers).append('|')
+           .append(mDescription.name()).append('|')
+           .append(mSearchContactDetails).append('|')
+           .append(mLoadedSortOrder.name());
+        for (String mimeType : getContactDetailsMimeTypes()) {
+            key.append('|').append(mimeType);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Start loading the groups and group memberships (does nothing if they are loaded already).
+     */
+    private void loadGroups() {
+        mLoadGroups = true;
+        mProcessor.expectGroupMemberships();
         getSupportLoaderManager().initLoader(GROUPS_LOADER_ID, null, this);
+        getSupportLoaderManager().initLoader(GROUP_MEMBERSHIPS_LOADER_ID, null, this);
     }
 
     @Override
@@ -397,6 +554,15 @@ public class ContactPickerActivity extends AppCompatActivity implements
         EventBus.getDefault().unregister(this);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (mProcessor != null) {
+            mProcessor.cancel();
+        }
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -405,13 +571,12 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
         outState.putInt("mThemeResId", mThemeResId);
 
-        mSelectedContactIds.clear();
-        for (Contact contact : mContacts) {
-            if (contact.isChecked()) {
-                mSelectedContactIds.add( contact.getId() );
-            }
-        }
-        outState.putSerializable(CONTACT_IDS, mSelectedContactIds);
+        outState.putBoolean(LOAD_GROUPS, mLoadGroups);
+
+        outState.putString(SORT_ORDER, mSortOrder.name());
+        outState.putString(LOADED_SORT_ORDER, mLoadedSortOrder.name());
+
+        outState.putSerializable(CONTACT_IDS, mSelectionIndex.getIds());
 
         mSelectedGroupIds.clear();
         for (Group group : mGroups) {
@@ -423,11 +588,12 @@ public class ContactPickerActivity extends AppCompatActivity implements
     }
 
     private void updateTitle() {
-        if (mNrOfSelectedContacts == 0) {
+        int nrOfSelectedContacts = mSelectionIndex.size();
+        if (nrOfSelectedContacts == 0) {
             setTitle(mDefaultTitle);
         }
         else {
-            String title = getString(R.string.cp_actionmode_selected, mNrOfSelectedContacts);
+            String title = getString(R.string.cp_actionmode_selected, nrOfSelectedContacts);
             setTitle(title);
         }
     }
@@ -441,6 +607,11 @@ public class ContactPickerActivity extends AppCompatActivity implements
             MenuItem checkAllBtn = menu.findItem(R.id.action_check_all);
             checkAllBtn.setVisible(mShowCheckAll);
         }
+        MenuItem sortOrderBtn = menu.findItem(R.id.action_sort_order);
+        sortOrderBtn.setVisible(mShowSortOrderSwitcher);
+        if (mShowSortOrderSwitcher) {
+            menu.findItem(getSortOrderMenuId(mSortOrder)).setChecked(true);
+        }
         return true;
     }
 
@@ -456,17 +627,50 @@ public class ContactPickerActivity extends AppCompatActivity implements
             onDone();
             return true;
         }
+        else if (id == R.id.action_sort_display_name || id == R.id.action_sort_first_name ||
+                 id == R.id.action_sort_last_name) {
+            item.setChecked(true);
+            switchSortOrder(id == R.id.action_sort_first_name ? ContactSortOrder.FIRST_NAME :
+                            id == R.id.action_sort_last_name ? ContactSortOrder.LAST_NAME :
+                            ContactSortOrder.AUTOMATIC);
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
 
+    private static int getSortOrderMenuId(ContactSortOrder sortOrder) {
+        switch (sortOrder) {
+            case FIRST_NAME: return R.id.action_sort_first_name;
+            case LAST_NAME: return R.id.action_sort_last_name;
+            default: return R.id.action_sort_display_name;
+        }
+    }
+
+    /**
+     * Show the contacts in a different sort order.
+     * This is a swap of the list once the ContactOrderings for the loaded contacts are available,
+     * until then the new sort order is only remembered and applied once they arrive.
+     */
+    private void switchSortOrder(ContactSortOrder sortOrder) {
+        if (sortOrder == mSortOrder) return;
+
+        mSortOrder = sortOrder;
+        mProcessor.setShownSortOrder(sortOrder);
+        if (mOrderings != null && mOrderings.isFor(mLoadedContacts)) {
+            mContacts = mOrderings.getContacts(sortOrder);
+            mSearchBoosts = mOrderings.getSearchBoosts(sortOrder, mLoadedSearchBoosts);
+            ContactsLoaded.post(mContacts, mSearchBoosts, null, null, sortOrder, false);
+        }
+    }
+
     private void onDone() {
-        // return only checked contacts
+        // return only checked contacts (checked by id, so a ContactStore creates only those)
         List<Contact> contacts = new ArrayList<>();
-        if (mContacts != null) {
-            for (Contact contact : mContacts) {
-                if (contact.isChecked()) {
-                    contacts.add(contact);
+        if (mContacts != null && mSelectionIndex.size() > 0) {
+            for (int pos = 0, size = mContacts.size(); pos < size; pos++) {
+                if (mSelectionIndex.contains(ContactStore.getContactId(mContacts, pos))) {
+                    contacts.add(mContacts.get(pos));
                 }
             }
         }
@@ -494,13 +698,8 @@ public class ContactPickerActivity extends AppCompatActivity implements
      * Loader configuration contacts
      */
     private static final int CONTACTS_LOADER_ID = 0;
-    private static final Uri CONTACTS_URI = ContactsContract.Contacts.CONTENT_URI;
-    private static final String[] CONTACTS_PROJECTION = new String[] {
-            ContactsContract.Contacts._ID,
-            ContactsContract.Contacts.LOOKUP_KEY,
-            ContactsContract.Contacts.DISPLAY_NAME_PRIMARY,
-            ContactsContract.Contacts.PHOTO_THUMBNAIL_URI};
-    private static final String CONTACTS_SORT = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " COLLATE LOCALIZED ASC";
+    private static final Uri CONTACTS_URI = getContactsUri();
+    private static final String[] CONTACTS_PROJECTION = getContactsProjection();
 
     /*
      * Loader configuration contacts details
@@ -508,8 +707,7 @@ public class ContactPickerActivity extends AppCompatActivity implements
     private static final int CONTACT_DETAILS_LOADER_ID = 1;
     private static final Uri CONTACT_DETAILS_URI = ContactsContract.Data.CONTENT_URI;
     private static final String[] CONTACT_DETAILS_PROJECTION = {
-            ContactsContract.Data.LOOKUP_KEY,
-            ContactsContract.Contacts.DISPLAY_NAME_PRIMARY,
+            ContactsContract.Data.CONTACT_ID,
             ContactsContract.Data.MIMETYPE,
             FORMATTED_ADDRESS,
             ContactsContract.CommonDataKinds.StructuredPostal.TYPE,
@@ -519,7 +717,6 @@ public class ContactPickerActivity extends AppCompatActivity implements
             ContactsContract.CommonDataKinds.Email.TYPE,
             ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
             ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME,
-            ContactsContract.CommonDataKinds.GroupMembership.GROUP_ROW_ID,
     };
 
     /*
@@ -533,6 +730,64 @@ public class ContactPickerActivity extends AppCompatActivity implements
     private static final String GROUPS_SELECTION = ContactsContract.Groups.DELETED + " = 0";
     private static final String GROUPS_SORT = ContactsContract.Groups.TITLE + " COLLATE LOCALIZED ASC";
 
+    /*
+     * Loader configuration group memberships
+     */
+    private static final int GROUP_MEMBERSHIPS_LOADER_ID = 3;
+    private static final Uri GROUP_MEMBERSHIPS_URI = ContactsContract.Data.CONTENT_URI;
+    private static final String[] GROUP_MEMBERSHIPS_PROJECTION = new String[] {
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.CommonDataKinds.GroupMembership.GROUP_ROW_ID};
+    private static final String GROUP_MEMBERSHIPS_SELECTION = ContactsContract.Data.MIMETYPE + " = ?";
+    private static final String[] GROUP_MEMBERSHIPS_SELECTION_ARGS = new String[] {
+            ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE};
+
+    /**
+     * On API 21 and higher the provider returns the alphabetic index of the contacts (section
+     * titles and counts in the sort order of the query) with the cursor.
+     */
+    private static Uri getContactsUri() {
+        Uri uri = ContactsContract.Contacts.CONTENT_URI;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            uri = uri.buildUpon()
+                     .appendQueryParameter(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX, "true")
+                     .build();
+        }
+        return uri;
+    }
+
+    /**
+     * The CONTACT_LAST_UPDATED_TIMESTAMP (API 18 and higher) lets the ContactProcessor patch the
+     * contacts when the contacts provider changes instead of reading them all over again.
+     */
+    private static String[] getContactsProjection() {
+        List<String> projection = new ArrayList<>();
+        projection.add(ContactsContract.Contacts._ID);
+        projection.add(ContactsContract.Contacts.LOOKUP_KEY);
+        projection.add(ContactsContract.Contacts.DISPLAY_NAME_PRIMARY);
+        projection.add(ContactsContract.Contacts.DISPLAY_NAME_ALTERNATIVE);
+        projection.add(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI);
+        projection.add(ContactsContract.Contacts.SORT_KEY_PRIMARY);
+        projection.add(ContactsContract.Contacts.SORT_KEY_ALTERNATIVE);
+        projection.add(ContactsContract.Contacts.STARRED);
+        projection.add(ContactsContract.Contacts.TIMES_CONTACTED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            projection.add(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP);
+        }
+        return projection.toArray(new String[projection.size()]);
+    }
+
+    /**
+     * The contacts are sorted by the provider's precomputed sort keys: SORT_KEY_ALTERNATIVE is
+     * derived from the "family name first" display name, SORT_KEY_PRIMARY from the primary one.
+     * The first name order is sorted by the ContactProcessor (see ContactSorter.isCursorOrder).
+     */
+    private String getContactsSortOrder() {
+        return mLoadedSortOrder == ContactSortOrder.LAST_NAME ?
+                ContactsContract.Contacts.SORT_KEY_ALTERNATIVE :
+                ContactsContract.Contacts.SORT_KEY_PRIMARY;
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         String selection = "";
@@ -542,16 +797,61 @@ public class ContactPickerActivity extends AppCompatActivity implements
         switch(id) {
             case CONTACTS_LOADER_ID:
                 return new CursorLoader(this, CONTACTS_URI, CONTACTS_PROJECTION,
-                        selection, null, CONTACTS_SORT);
-            case CONTACT_DETAILS_LOADER_ID:
+                        selection, null, getContactsSortOrder());
+            case CONTACT_DETAILS_LOADER_ID: {
+                String[] mimeTypes = getContactDetailsMimeTypes();
+                StringBuilder detailsSelection = new StringBuilder();
+                if (! selection.isEmpty()) {
+                    detailsSelection.append(selection).append(" AND ");
+                }
+                detailsSelection.append(ContactsContract.Data.MIMETYPE).append(" IN (?");
+                for (int i = 1; i < mimeTypes.length; i++) {
+                    detailsSelection.append(",?");
+                }
+                detailsSelection.append(")");
                 return new CursorLoader(this, CONTACT_DETAILS_URI, CONTACT_DETAILS_PROJECTION,
-                        selection, null, null);
+                        detailsSelection.toString(), mimeTypes, null);
+            }
             case GROUPS_LOADER_ID:
                 return new CursorLoader(this, GROUPS_URI, GROUPS_PROJECTION, GROUPS_SELECTION, null, GROUPS_SORT);
+            case GROUP_MEMBERSHIPS_LOADER_ID:
+                return new CursorLoader(this, GROUP_MEMBERSHIPS_URI, GROUP_MEMBERSHIPS_PROJECTION,
+                        GROUP_MEMBERSHIPS_SELECTION, GROUP_MEMBERSHIPS_SELECTION_ARGS, null);
         }
         return null;
     }
 
+    /**
+     * The contact details query is restricted to the data rows we actually use: the structured
+     * name (first and last name) and the one kind of data shown as contact description (plus the
+     * phone numbers and emails if the contacts are searched by them).
+     * The group memberships have their own loader since they are only needed for the group tab.
+     */
+    private String[] getContactDetailsMimeTypes() {
+        List<String> mimeTypes = new ArrayList<>();
+        mimeTypes.add(ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE);
+        switch (mDescription) {
+            case EMAIL:
+                mimeTypes.add(ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE);
+                break;
+            case PHONE:
+                mimeTypes.add(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE);
+                break;
+            case ADDRESS:
+                mimeTypes.add(ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE);
+                break;
+        }
+        if (mSearchContactDetails) {
+            if (mDescription != ContactDescription.EMAIL) {
+                mimeTypes.add(ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE);
+            }
+            if (mDescription != ContactDescription.PHONE) {
+                mimeTypes.add(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE);
+            }
+        }
+        return mimeTypes.toArray(new String[mimeTypes.size()]);
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         ContactsLoaded.post(null);
@@ -562,165 +862,77 @@ public class ContactPickerActivity extends AppCompatActivity implements
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
         switch(loader.getId()) {
             case CONTACTS_LOADER_ID:
-                readContacts(cursor);
-                // contacts loaded --> load the contact details
-                getSupportLoaderManager().initLoader(CONTACT_DETAILS_LOADER_ID, null, this);
+                mProcessor.processContacts(cursor);
                 break;
 
             case CONTACT_DETAILS_LOADER_ID:
-                readContactDetails(cursor);
+                mProcessor.processContactDetails(cursor);
                 break;
 
             case GROUPS_LOADER_ID: {
-                readGroups(cursor);
+                mProcessor.processGroups(cursor, new HashSet<>(mSelectedGroupIds));
                 break;
             }
+
+            case GROUP_MEMBERSHIPS_LOADER_ID:
+                mProcessor.processGroupMemberships(cursor);
+                break;
         }
     }
 
-    // ****************************************** Contact Methods *******************************************
+    // ****************************************** Contact / Group Methods *******************************************
 
     /*
-     * List of all contacts.
+     * Reads the cursors, joins and sorts contacts and groups in a background thread.
      */
-    private List<ContactImpl> mContacts = new ArrayList<>();
+    private ContactProcessor mProcessor;
 
     /*
-     * Map of all contacts by lookup key (ContactsContract.Contacts.LOOKUP_KEY).
-     * We use this to find the contacts when the contact details are loaded.
+     * List of all contacts (immutable, replaced whenever the ContactProcessor publishes a new one)
+     * and their search boosts (Null if the search mode doesn't rank the contacts).
      */
-    private Map<String, ContactImpl> mContactsByLookupKey = new HashMap<>();
+    private List<ContactImpl> mContacts = new ArrayList<>();
+    private int[] mSearchBoosts;
 
     /*
-     * Number of selected contacts.
-     * Selected groups are reflected in this too.
+     * The contacts as posted by the ContactProcessor (in mLoadedSortOrder) and their orderings
+     * (only if the sort order can be switched). mContacts are the contacts as they are shown.
      */
-    private int mNrOfSelectedContacts = 0;
-
-    private Comparator<ContactImpl> mContactComparator = new Comparator<ContactImpl>() {
-        @Override
-        public int compare(ContactImpl lhs, ContactImpl rhs) {
-            switch(mSortOrder) {
-                case FIRST_NAME: return lhs.getFirstName().compareToIgnoreCase(rhs.getFirstName());
-                case LAST_NAME: return lhs.getLastName().compareToIgnoreCase(rhs.getLastName());
-                default: return lhs.getDisplayName().compareToIgnoreCase(rhs.getDisplayName());
-            }
-        }
-    };
-
-    private void readContacts(Cursor cursor) {
-        mContacts.clear();
-        mContactsByLookupKey.clear();
-        mNrOfSelectedContacts = 0;
-
-        int count = 0;
-        if (cursor.moveToFirst()) {
-            cursor.moveToPrevious();
-            while (cursor.moveToNext()) {
-                ContactImpl contact = ContactImpl.fromCursor(cursor);
-                mContacts.add(contact);
-
-                // LOOKUP_KEY is the one we use to retrieve the contact when the contact details are loaded
-                String lookupKey = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY));
-                mContactsByLookupKey.put(lookupKey, contact);
-
-                boolean isChecked = mSelectedContactIds.contains( contact.getId() );
-                contact.setChecked(isChecked, true);
-                mNrOfSelectedContacts += isChecked ? 1 : 0;
-
-                contact.addOnContactCheckedListener(mContactListener);
-
-                // update the ui once some contacts have loaded
-                if (++count >= BATCH_SIZE) {
-                    sortAndPostCopy(mContacts);
-                    count = 0;
-                }
-            }
-        }
-
-        if (count > 0) {
-            sortAndPostCopy(mContacts);
-        }
-
-        updateTitle();
-    }
+    private List<ContactImpl> mLoadedContacts = new ArrayList<>();
+    private int[] mLoadedSearchBoosts;
+    private ContactOrderings mOrderings;
 
     /**
-     * For concurrency reasons we create a copy of the contacts list before it's sorted and sent to
-     * the ContactFragment. Note: this affects only the list itself, individual contacts are still
-     * shared between the Activity and the Fragment (and its adapter).
+     * Show the contacts posted by the ContactProcessor in the sort order picked by the user if
+     * possible, otherwise in the order they were loaded in.
      */
-    private void sortAndPostCopy(List<ContactImpl> contacts) {
-        List<ContactImpl> copy = new ArrayList<>();
-        copy.addAll(contacts);
-        Collections.sort(copy, mContactComparator);
-        ContactsLoaded.post(copy);
-    }
-
-    private void readContactDetails(Cursor cursor) {
-        if (cursor != null && cursor.moveToFirst()) {
-            cursor.moveToPrevious();
-            while (cursor.moveToNext()) {
-                String lookupKey = cursor.getString(cursor.getColumnIndex(ContactsContract.Data.LOOKUP_KEY));
-                ContactImpl contact = mContactsByLookupKey.get(lookupKey);
-
-                if (contact != null) {
-                    readContactDetails(cursor, contact);
-                }
-            }
-        }
-
-        sortAndPostCopy(mContacts);
-        joinContactsAndGroups(mContacts);
-    }
-
-    private void readContactDetails(Cursor cursor, ContactImpl contact) {
-        String mime = cursor.getString(cursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
-        if (mime.equals(ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE)) {
-            String email = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Email.ADDRESS));
-            int type = cursor.getInt(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Email.TYPE));
-            if (email != null) {
-                contact.setEmail(type, email);
-            }
+    private void setLoadedContacts(List<ContactImpl> contacts, int[] searchBoosts,
+                                   Set<Long> changedIds, ContactsDiff diff, boolean detailsLoaded) {
+        mLoadedContacts = contacts;
+        mLoadedSearchBoosts = searchBoosts;
+        if (mOrderings != null && mOrderings.isFor(contacts)) {
+            mContacts = mOrderings.getContacts(mSortOrder);
+            mSearchBoosts = mOrderings.getSearchBoosts(mSortOrder, searchBoosts);
+            ContactsLoaded.post(mContacts, mSearchBoosts, changedIds, diff, mSortOrder, detailsLoaded);
         }
-        else if (mime.equals(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)) {
-            String phone = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER));
-            int type = cursor.getInt(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.TYPE));
-            if (phone != null) {
-                contact.setPhone(type, phone);
-            }
-        }
-        else if (mime.equals(ContactsContract.CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)) {
-            String address = cursor.getString(cursor.getColumnIndex(FORMATTED_ADDRESS));
-            int type = cursor.getInt(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredPostal.TYPE));
-            if (address != null) {
-                contact.setAddress(type, address.replaceAll("\\n", ", "));
-            }
-        }
-        else if (mime.equals(ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)) {
-            String firstName = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME));
-            String lastName = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME));
-            if (firstName != null) contact.setFirstName(firstName);
-            if (lastName != null) contact.setLastName(lastName);
-        }
-        else if (mime.equals(ContactsContract.CommonDataKinds.GroupMembership.CONTENT_ITEM_TYPE)) {
-            int groupId = cursor.getInt(cursor.getColumnIndex(ContactsContract.CommonDataKinds.GroupMembership.GROUP_ROW_ID));
-            contact.addGroupId(groupId);
+        else {
+            mContacts = contacts;
+            mSearchBoosts = searchBoosts;
+            ContactsLoaded.post(contacts, searchBoosts, changedIds, diff, mLoadedSortOrder, detailsLoaded);
         }
     }
 
-    // ****************************************** Group Methods *******************************************
-
     /*
-     * List of all groups.
+     * The ids of all selected contacts (selected groups are reflected in this too).
+     * It's updated whenever a contact is checked or un-checked, so the number of selected contacts
+     * is known without iterating over all contacts.
      */
-    private List<GroupImpl> mGroups = new ArrayList<>();
+    private final SelectionIndex mSelectionIndex = new SelectionIndex();
 
     /*
-     * Map of all groups by id (ContactsContract.Groups._ID).
-     * We use this to find the group when joining contacts and groups.
+     * List of all groups (immutable, replaced whenever the ContactProcessor publishes a new one).
      */
-    private Map<Long, GroupImpl> mGroupsById = new HashMap<>();
+    private List<GroupImpl> mGroups = new ArrayList<>();
 
     /*
      * List of all visible groups.
@@ -728,62 +940,39 @@ public class ContactPickerActivity extends AppCompatActivity implements
      */
     private List<GroupImpl> mVisibleGroups = new ArrayList<>();
 
-    private void readGroups(Cursor cursor) {
-        mGroups.clear();
-        mGroupsById.clear();
-        mVisibleGroups.clear();
-
-        if (cursor.moveToFirst()) {
-            cursor.moveToPrevious();
-            while (cursor.moveToNext()) {
-                GroupImpl group = GroupImpl.fromCursor(cursor);
-
-                mGroups.add(group);
-                mGroupsById.put(group.getId(), group);
-
-                boolean isChecked = mSelectedGroupIds.contains( group.getId() );
-                group.setChecked(isChecked, true);
-
-                group.addOnContactCheckedListener(mGroupListener);
-            }
+    private ContactProcessor.ContactProcessorCallback mProcessorCallback = new ContactProcessor.ContactProcessorCallback() {
+        @Override
+        public void onContactsLoaded(List<ContactImpl> contacts, int[] searchBoosts) {
+            setLoadedContacts(contacts, searchBoosts, null, null, false);
+            updateTitle();
         }
 
-        GroupsLoaded.post(mVisibleGroups);
-        joinContactsAndGroups(mContacts);
-    }
-
-    // ****************************************** Process Contacts / Groups *******************************************
+        @Override
+        public void onContactsUpdated(List<ContactImpl> contacts) {
+            setLoadedContacts(contacts, mLoadedSearchBoosts, null, null, true);
+        }
 
-    /**
-     * Join contacts and groups.
-     * This can happen once the contact details and the groups have loaded.
-     */
-    private synchronized void joinContactsAndGroups(List<? extends Contact> contacts) {
-        if (contacts == null || contacts.isEmpty()) return;
-        if (mGroupsById == null || mGroupsById.isEmpty()) return;
+        @Override
+        public void onContactsChanged(List<ContactImpl> contacts, int[] searchBoosts, Set<Long> changedIds,
+                                      ContactsDiff diff) {
+            setLoadedContacts(contacts, searchBoosts, changedIds, diff, false);
+            updateTitle();
+        }
 
-        // map contacts to groups
-        for (Contact contact : contacts) {
-            for (Long groupId : contact.getGroupIds()) {
-                GroupImpl group = mGroupsById.get(groupId);
-                if (group != null) {
-                    if (! group.hasContacts()) {
-                        mVisibleGroups.add(group);
-                    }
-                    group.addContact(contact);
-                }
-            }
+        @Override
+        public void onContactOrderingsLoaded(ContactOrderings orderings) {
+            mOrderings = orderings;
         }
 
-        Collections.sort(mVisibleGroups, new Comparator<GroupImpl>() {
-            @Override
-            public int compare(GroupImpl lhs, GroupImpl rhs) {
-                return lhs.getDisplayName().compareTo(rhs.getDisplayName());
-            }
-        });
+        @Override
+        public void onGroupsLoaded(List<GroupImpl> groups, List<GroupImpl> visibleGroups) {
+            mGroups = groups;
+            mVisibleGroups = visibleGroups;
+            GroupsLoaded.post(visibleGroups);
+        }
+    };
 
-        GroupsLoaded.post(mVisibleGroups);
-    }
+    // ****************************************** Process Contacts / Groups *******************************************
 
     /**
      * Listening to onContactChecked for contacts because we need to update the title to reflect
@@ -793,16 +982,17 @@ public class ContactPickerActivity extends AppCompatActivity implements
     private OnContactCheckedListener<Contact> mContactListener = new OnContactCheckedListener<Contact>() {
         @Override
         public void onContactChecked(Contact contact, boolean wasChecked, boolean isChecked) {
-            if (isAboveContactLimit(1, wasChecked, isChecked)){
+            // the SelectionIndex already counts the contact that has just been checked
+            if (isAboveContactLimit(0, wasChecked, isChecked)){
                 contact.setChecked(false, true);
-                ContactsLoaded.post(mContacts);
+                ContactsLoaded.post(mContacts, mSearchBoosts);
                 Toast.makeText(ContactPickerActivity.this, mLimitReachedMessage,
                         Toast.LENGTH_LONG).show();
             } else {
-                updateSelectContacts();
+                updateTitle();
 
                 if (!isChecked) {
-                    processGroupSelection();
+                    deselectGroups((ContactImpl) contact);
                 }
             }
         }
@@ -832,13 +1022,13 @@ public class ContactPickerActivity extends AppCompatActivity implements
 
     private boolean isAboveContactLimit(int contactsSelection, boolean wasChecked, boolean isChecked) {
         return !wasChecked && isChecked && mSelectContactsLimit > 0 &&
-                mNrOfSelectedContacts + contactsSelection > mSelectContactsLimit;
+                mSelectionIndex.size() + contactsSelection > mSelectContactsLimit;
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEventMainThread(ContactSelectionChanged event) {
-        // all has changed -> calculate the number of selected contacts and update the title
-        updateSelectContacts();
+        // all has changed -> update the title with the number of selected contacts
+        updateTitle();
 
         // check if we need to deselect some groups
         processGroupSelection();
@@ -854,17 +1044,11 @@ public class ContactPickerActivity extends AppCompatActivity implements
         updateSelectedGroupIds(mSelectedGroupIds, group.getId(), isChecked);
 
         // check/un-check contacts
-        boolean hasChanged = false;
-        for (Contact contact : group.getContacts()) {
-            if (contact.isChecked() != isChecked) {
-                contact.setChecked(isChecked, true);
-                hasChanged = true;
-            }
-        }
+        boolean hasChanged = ((GroupImpl) group).setContactsChecked(isChecked);
 
         if (hasChanged) {
-            updateSelectContacts();
-            ContactsLoaded.post(mContacts);
+            updateTitle();
+            ContactsLoaded.post(mContacts, mSearchBoosts);
         }
     }
 
@@ -877,35 +1061,33 @@ public class ContactPickerActivity extends AppCompatActivity implements
     }
 
     /**
-     * Calculate the number or selected contacts.
+     * Check if a group needs to be deselected because none of its contacts is selected.
      * Call this when a group has been selected/deselected or after a ContactSelectionChanged event.
      */
-    private void updateSelectContacts() {
-        if (mContacts == null) return;
+    private void processGroupSelection() {
+        if (mGroups == null) return;
 
-        mNrOfSelectedContacts = 0;
-        for (Contact contact : mContacts) {
-            if (contact.isChecked()) {
-                mNrOfSelectedContacts++;
-                mSelectedContactIds.add(contact.getId());
-            } else {
-                mSelectedContactIds.remove(contact.getId());
+        boolean hasChanged = false;
+        for (GroupImpl theGroup : mGroups) {
+            if (deselectGroup(theGroup)) {
+                hasChanged = true;
             }
         }
 
-        updateTitle();
+        if (hasChanged) {
+            GroupsLoaded.post(mVisibleGroups);
+        }
     }
 
     /**
-     * Check if a group needs to be deselected because none of its contacts is selected.
-     * Call this when a contact or group has been deselected or after a ContactSelectionChanged event.
+     * Check if some of the contact's groups need to be deselected because none of their contacts
+     * is selected.
+     * Call this when a contact has been deselected.
      */
-    private void processGroupSelection() {
-        if (mGroups == null) return;
-
+    private void deselectGroups(ContactImpl contact) {
         boolean hasChanged = false;
-        for (Group theGroup : mGroups) {
-            if (deselectGroup(theGroup)) {
+        for (GroupImpl group : contact.getGroups()) {
+            if (deselectGroup(group)) {
                 hasChanged = true;
             }
         }
@@ -915,19 +1097,11 @@ public class ContactPickerActivity extends AppCompatActivity implements
         }
     }
 
-    private boolean deselectGroup(Group group) {
+    private boolean deselectGroup(GroupImpl group) {
         if (group == null) return false;
 
         // check if the group's contacts are all deselected
-        boolean isSelected = false;
-        for (Contact groupContact : group.getContacts()) {
-            if (groupContact.isChecked()) {
-                isSelected = true;
-                break;
-            }
-        }
-
-        if (! isSelected && group.isChecked()) {
+        if (! group.hasCheckedContacts() && group.isChecked()) {
             // no contact selected
             group.setChecked(false, true);
             return true;
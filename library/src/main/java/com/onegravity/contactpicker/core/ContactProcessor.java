@@ -0,0 +1,955 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.database.Cursor;
+import android.database.StaleDataException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.onegravity.contactpicker.OnContactCheckedListener;
+import com.onegravity.contactpicker.contact.Contact;
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+import com.onegravity.contactpicker.contact.ContactsDiff;
+import com.onegravity.contactpicker.group.Group;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ContactProcessor reads the cursors delivered by the ContactPickerActivity's loaders, creates
+ * the ContactImpl / GroupImpl instances, joins contacts and groups and sorts the contacts.
+ *
+ * All of this runs on a single background thread which owns the model, meaning it's the only
+ * thread creating and modifying contacts and groups (apart from their checked state which is
+ * managed by the ui). The ui thread only gets immutable copies of the contact and group lists
+ * through the {@link ContactProcessorCallback}.
+ */
+class ContactProcessor {
+
+    interface ContactProcessorCallback {
+        /**
+         * New contacts have been loaded (called repeatedly while the contacts cursor is read).
+         *
+         * @param searchBoosts the search boost of each contact (see ContactImpl.getSearchBoost) or
+         *                     Null if they aren't needed.
+         */
+        void onContactsLoaded(List<ContactImpl> contacts, int[] searchBoosts);
+
+        /**
+         * The same contacts as before have been updated (details) and sorted (their search boosts
+         * don't change).
+         */
+        void onContactsUpdated(List<ContactImpl> contacts);
+
+        /**
+         * The contacts provider changed and the contacts were patched (some contacts were added,
+         * updated or removed).
+         *
+         * @param searchBoosts see onContactsLoaded.
+         * @param changedIds the ids of the contacts that were updated (not added or removed).
+         * @param diff the changes of the contacts in the shown sort order (see setShownSortOrder).
+         */
+        void onContactsChanged(List<ContactImpl> contacts, int[] searchBoosts, Set<Long> changedIds,
+                               ContactsDiff diff);
+
+        /**
+         * The contacts have been sorted in all sort orders (only if requested).
+         * Called right before the contacts the orderings were built from are posted.
+         */
+        void onContactOrderingsLoaded(ContactOrderings orderings);
+
+        /**
+         * Groups have been loaded or joined with the contacts.
+         */
+        void onGroupsLoaded(List<GroupImpl> groups, List<GroupImpl> visibleGroups);
+    }
+
+    /*
+     * Update the ui after a certain amount of contacts has loaded.
+     * The batch size doubles with each update so the total cost of merging the batches into the
+     * sorted contact list stays linear in the number of contacts.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /*
+     * A single thread shared by all instances.
+     * A new ContactPickerActivity instance (e.g. after a configuration change) receives the same
+     * cursors from the LoaderManager as the old one so the processing of two instances must never
+     * run concurrently.
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final OnContactCheckedListener<Contact> mContactListener;
+    private final OnContactCheckedListener<Group> mGroupListener;
+    private final ContactProcessorCallback mCallback;
+    private final ContactSortOrder mSortOrder;
+
+    /*
+     * True if the contacts are sorted in all sort orders so the sort order can be switched at runtime.
+     */
+    private final boolean mBuildOrderings;
+
+    /*
+     * True if the search boosts of the contacts are posted with them (for SearchMode.RANKED).
+     */
+    private final boolean mComputeSearchBoosts;
+    private final SelectionIndex mSelectionIndex;
+
+    private volatile boolean mCancelled;
+
+    /*
+     * The sort order the ui shows the contacts in (the changes are calculated for that order).
+     */
+    private volatile ContactSortOrder mShownSortOrder;
+
+    /*
+     * The optional on-disk snapshot (Null if disabled).
+     */
+    private final ContactSnapshot mSnapshot;
+
+    // ****************************************** Model (processor thread only) *******************************************
+
+    /*
+     * Sorted list of all contacts.
+     * This is always the last snapshot created by mSorter so it's immutable.
+     */
+    private List<ContactImpl> mContacts = Collections.emptyList();
+
+    private final ContactSorter mSorter;
+
+    /*
+     * The orderings of mContacts (Null if they aren't built).
+     */
+    private ContactOrderings mOrderings;
+
+    /*
+     * If True the contacts cursor is read into a columnar ContactStore and the ContactImpl
+     * instances are only created when they are accessed. mStore is the store of the last cursor.
+     */
+    private final boolean mUseContactStore;
+    private ContactStore mStore;
+
+    /*
+     * Map of all contacts by id (ContactsContract.Contacts._ID).
+     * We use this to patch the contacts when the contacts provider changes.
+     */
+    private final Map<Long, ContactImpl> mContactsById = new HashMap<>();
+
+    /*
+     * The most recent CONTACT_LAST_UPDATED_TIMESTAMP of all contacts (0 if unknown).
+     * Contacts that weren't updated after that don't need to be decoded again.
+     */
+    private long mLastSyncTimestamp;
+
+    /*
+     * Contact details by contact id (ContactsContract.Data.CONTACT_ID).
+     * The contacts and their details are queried concurrently and either one can arrive first, so
+     * the details are buffered here until the contacts have loaded. We also keep them around so
+     * they can be re-attached if the contacts are reloaded.
+     * The map is replaced, never modified, once it's been assigned because the ContactStore's
+     * contacts might be created (and their details attached) on the ui thread.
+     */
+    private volatile Map<Long, ContactDetails> mDetailsById = new HashMap<>();
+
+    /*
+     * Group ids by contact id (ContactsContract.Data.CONTACT_ID).
+     * Buffered for the same reason as the contact details (and replaced like them too).
+     */
+    private volatile Map<Long, LongArraySet> mGroupIdsById = new HashMap<>();
+
+    /*
+     * The groups are only loaded if there's a group tab and only once that tab is shown.
+     * There's no need to join contacts and groups before that.
+     */
+    private boolean mGroupsLoaded;
+
+    /*
+     * True while the contacts from the snapshot are shown (until the contacts cursor has been
+     * read completely).
+     */
+    private boolean mShowingSnapshot;
+
+    /*
+     * The snapshot is written once per contacts cursor, when the contacts, the details and (if the
+     * groups are loaded) the group memberships have been read from the provider.
+     */
+    private boolean mContactsLoaded;
+    private boolean mDetailsLoaded;
+    private boolean mGroupIdsLoaded;
+    private boolean mGroupIdsExpected;
+    private boolean mSnapshotWritten;
+
+    /*
+     * List of all groups.
+     */
+    private final List<GroupImpl> mGroups = new ArrayList<>();
+
+    /*
+     * True if the contacts, the group memberships or the groups have changed since contacts and
+     * groups were joined the last time.
+     */
+    private boolean mJoinPending;
+
+    /*
+     * The result of the last join (Null if the groups have been (re-)loaded since).
+     */
+    private GroupMembership mMembership;
+
+    private static final Comparator<GroupImpl> GROUP_COMPARATOR = new Comparator<GroupImpl>() {
+        @Override
+        public int compare(GroupImpl lhs, GroupImpl rhs) {
+            return lhs.getDisplayName().compareTo(rhs.getDisplayName());
+        }
+    };
+
+    ContactProcessor(ContactSortOrder sortOrder,
+                     OnContactCheckedListener<Contact> contactListener,
+                     OnContactCheckedListener<Group> groupListener,
+                     ContactProcessorCallback callback,
+                     SelectionIndex selectionIndex,
+                     ContactSnapshot snapshot,
+                     boolean useContactStore,
+                     boolean buildOrderings,
+                     boolean computeSearchBoosts) {
+        mSorter = new ContactSorter(sortOrder);
+        mSortOrder = sortOrder;
+        mShownSortOrder = sortOrder;
+        mBuildOrderings = buildOrderings;
+        mComputeSearchBoosts = computeSearchBoosts;
+        mUseContactStore = useContactStore;
+        mContactListener = contactListener;
+        mGroupListener = groupListener;
+        mCallback = callback;
+        mSelectionIndex = selectionIndex;
+        mSnapshot = snapshot;
+    }
+
+    /**
+     * Set the sort order the contacts are shown in (if it's not the one they are loaded in).
+     */
+    void setShownSortOrder(ContactSortOrder sortOrder) {
+        mShownSortOrder = sortOrder;
+    }
+
+    /**
+     * Stop processing and don't call the callback any more.
+     * Call this when the Activity is destroyed.
+     */
+    void cancel() {
+        mCancelled = true;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    // ****************************************** Public (ui thread) Methods *******************************************
+
+    /**
+     * Show the contacts from the snapshot until the contacts provider has delivered.
+     * Does nothing if there's no (valid) snapshot.
+     */
+    void processSnapshot() {
+        if (mSnapshot == null) return;
+
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    readSnapshot();
+                }
+            }
+        });
+    }
+
+    void processContacts(final Cursor cursor) {
+        execute(new CursorTask() {
+            @Override
+            void process() {
+                readContacts(cursor);
+            }
+        });
+    }
+
+    void processContactDetails(final Cursor cursor) {
+        execute(new CursorTask() {
+            @Override
+            void process() {
+                readContactDetails(cursor);
+            }
+        });
+    }
+
+    void processGroups(final Cursor cursor, final Set<Long> selectedGroupIds) {
+        execute(new CursorTask() {
+            @Override
+            void process() {
+                readGroups(cursor, selectedGroupIds);
+            }
+        });
+    }
+
+    /**
+     * The group memberships will be loaded, the snapshot is written once they have been read.
+     */
+    void expectGroupMemberships() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                mGroupIdsExpected = true;
+            }
+        });
+    }
+
+    void processGroupMemberships(final Cursor cursor) {
+        execute(new CursorTask() {
+            @Override
+            void process() {
+                readGroupMemberships(cursor);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            sExecutor.execute(task);
+        }
+        catch (Exception e) {
+            Log.e(getClass().getSimpleName(), "Failed to process contacts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The LoaderManager closes a cursor once a new one has been delivered or the loader is reset.
+     * If that happens while the cursor is still being read we simply abort, the new cursor will be
+     * processed by the next task.
+     */
+    private abstract class CursorTask implements Runnable {
+        @Override
+        public final void run() {
+            if (mCancelled) return;
+
+            try {
+                process();
+            }
+            catch (IllegalStateException | StaleDataException e) {
+                Log.w(ContactProcessor.class.getSimpleName(), "Cursor closed while processing: " + e.getMessage());
+            }
+        }
+
+        abstract void process();
+    }
+
+    // ****************************************** Contact Methods *******************************************
+
+    private static long[] getIds(Set<Long> idSet) {
+        long[] ids = new long[idSet.size()];
+        int i = 0;
+        for (Long id : idSet) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    private void readSnapshot() {
+        // the contacts provider was faster
+        if (mContactsLoaded) return;
+
+        List<ContactImpl> contacts = mSnapshot.read();
+        if (contacts == null || contacts.isEmpty()) return;
+
+        Map<Long, ContactDetails> detailsById = new HashMap<>(mDetailsById);
+        Map<Long, LongArraySet> groupIdsById = new HashMap<>(mGroupIdsById);
+        mSorter.reset();
+        for (ContactImpl contact : contacts) {
+            mSorter.add(contact);
+
+            /*
+             * Until the provider delivers, the snapshot details and group ids are used for the
+             * contacts read from the cursor too.
+             */
+            if (! mDetailsLoaded) {
+                ContactDetails details = contact.getDetails();
+                if (details != null) {
+                    detailsById.put(contact.getId(), details);
+                }
+            }
+            if (! mGroupIdsLoaded) {
+                groupIdsById.put(contact.getId(), contact.getGroupIdSet());
+            }
+
+            attach(contact);
+        }
+        mDetailsById = detailsById;
+        mGroupIdsById = groupIdsById;
+
+        mShowingSnapshot = true;
+        mContacts = mSorter.getSnapshot();
+        postContactsLoaded(mContacts);
+
+        mJoinPending = true;
+        joinContactsAndGroups();
+    }
+
+    /**
+     * Let a new contact use the SelectionIndex for its checked state and start listening to changes.
+     * The SelectionIndex is never cleared: it has the preselected / restored contacts from the start
+     * and after a (re-)load only the ids of contacts that don't exist any more are removed, so the
+     * contacts the user checks or un-checks while the contacts load keep their state.
+     */
+    private void attach(ContactImpl contact) {
+        contact.setSelectionIndex(mSelectionIndex);
+        contact.addOnContactCheckedListener(mContactListener);
+    }
+
+    /**
+     * Read the contacts into a ContactStore.
+     * No ContactImpl instances are created here, mContactFactory initializes them once they are
+     * created by the store. The contacts are always read completely (no delta sync).
+     */
+    private void readContactsIntoStore(Cursor cursor) {
+        ContactStore store = new ContactStore(cursor, mSortOrder, mContactFactory, mSelectionIndex);
+        mStore = store;
+
+        int batchSize = BATCH_SIZE;
+        if (cursor.moveToFirst()) {
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                store.add(cursor);
+
+                // update the ui once some contacts have loaded (unless the snapshot is shown)
+                if (! mShowingSnapshot && store.size() >= batchSize) {
+                    mContacts = store.sort();
+                    postContactsLoaded(mContacts);
+                    batchSize *= 2;
+                }
+            }
+        }
+
+        mShowingSnapshot = false;
+        mContactsLoaded = true;
+        mSnapshotWritten = false;
+        mSelectionIndex.retainAll(store.getIds());
+        mContacts = withIndex(store.sort(), cursor);
+        postContactOrderings();
+        postContactsLoaded(mContacts);
+
+        mJoinPending = true;
+        joinContactsAndGroups();
+
+        writeSnapshot();
+    }
+
+    /**
+     * Initializes the contacts created by the ContactStore (on the ui or the processor thread).
+     */
+    private final ContactStore.ContactFactory mContactFactory = new ContactStore.ContactFactory() {
+        @Override
+        public void onContactCreated(ContactImpl contact) {
+            long id = contact.getId();
+            contact.setDetails(mDetailsById.get(id));
+            contact.setGroupIds(mGroupIdsById.get(id));
+            attach(contact);
+        }
+    };
+
+    /**
+     * Initializes the temporary contacts of a ContactStore that are only read (e.g. to write the
+     * snapshot), they aren't kept and don't need to listen to anything.
+     */
+    private final ContactStore.ContactFactory mUncachedContactFactory = new ContactStore.ContactFactory() {
+        @Override
+        public void onContactCreated(ContactImpl contact) {
+            long id = contact.getId();
+            contact.setDetails(mDetailsById.get(id));
+            contact.setGroupIds(mGroupIdsById.get(id));
+        }
+    };
+
+    /**
+     * @return a read-only view of the contacts that doesn't create (and keep) the contacts of a
+     * ContactStore.
+     */
+    private List<ContactImpl> getUncachedContacts(final List<ContactImpl> contacts) {
+        return new AbstractList<ContactImpl>() {
+            @Override
+            public ContactImpl get(int position) {
+                return ContactStore.getUncachedContact(contacts, position, mUncachedContactFactory);
+            }
+
+            @Override
+            public int size() {
+                return contacts.size();
+            }
+        };
+    }
+
+    /**
+     * @return the contacts that need to be updated if the details or group ids change: all
+     * contacts or just the ones created so far if a ContactStore is used (the others pick up the
+     * new details and group ids when they are created).
+     */
+    private List<ContactImpl> getCreatedContacts() {
+        return mStore != null ? mStore.getCreatedContacts() : mContacts;
+    }
+
+    private void writeSnapshot() {
+        if (mSnapshot == null || mSnapshotWritten || ! mContactsLoaded || ! mDetailsLoaded ||
+            (mGroupIdsExpected && ! mGroupIdsLoaded)) return;
+
+        mSnapshotWritten = true;
+        mSnapshot.write(getUncachedContacts(mContacts));
+    }
+
+    private void readContacts(Cursor cursor) {
+        if (mUseContactStore) {
+            readContactsIntoStore(cursor);
+            return;
+        }
+
+        if (mContactsLoaded && mLastSyncTimestamp > 0) {
+            readChangedContacts(cursor);
+            return;
+        }
+
+        mSorter.reset();
+        mContactsById.clear();
+        long lastSyncTimestamp = 0;
+
+        int batchSize = BATCH_SIZE;
+        ContactRowDecoder decoder = new ContactRowDecoder(cursor);
+        if (cursor.moveToFirst()) {
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                ContactImpl contact = decoder.decode(cursor);
+                mSorter.add(contact);
+                mContactsById.put(contact.getId(), contact);
+                lastSyncTimestamp = Math.max(lastSyncTimestamp, decoder.getLastUpdated(cursor));
+
+                // attach the details if they have loaded already
+                contact.setDetails(mDetailsById.get(contact.getId()));
+                contact.setGroupIds(mGroupIdsById.get(contact.getId()));
+
+                attach(contact);
+
+                // update the ui once some contacts have loaded (unless the snapshot is shown)
+                if (! mShowingSnapshot && mSorter.getNrOfPending() >= batchSize) {
+                    mContacts = mSorter.getSnapshot();
+                    postContactsLoaded(mContacts);
+                    batchSize *= 2;
+                }
+            }
+        }
+
+        mShowingSnapshot = false;
+        mContactsLoaded = true;
+        mSnapshotWritten = false;
+        mLastSyncTimestamp = lastSyncTimestamp;
+        mSelectionIndex.retainAll(getIds(mContactsById.keySet()));
+        mContacts = withIndex(mSorter.getSnapshot(), cursor);
+        postContactOrderings();
+        postContactsLoaded(mContacts);
+
+        mJoinPending = true;
+        joinContactsAndGroups();
+
+        writeSnapshot();
+    }
+
+    /**
+     * Patch the contacts after the contacts provider changed.
+     *
+     * The CursorLoader re-queries all contacts but only the ones updated after the last sync are
+     * decoded again, all others (and their cached state) are kept. Contacts missing in the cursor
+     * have been deleted. The CONTACT_LAST_UPDATED_TIMESTAMP column exists on API 18 and higher,
+     * before that the contacts are always read completely.
+     */
+    private void readChangedContacts(Cursor cursor) {
+        // keeps the cursor order (the sort orders supplied by the provider aren't sorted again)
+        Map<Long, ContactImpl> contactsById = new LinkedHashMap<>();
+        Set<Long> changedIds = new HashSet<>();
+        List<ContactImpl> decodedContacts = new ArrayList<>();
+        int nrOfNewContacts = 0;
+        long lastSyncTimestamp = mLastSyncTimestamp;
+
+        ContactRowDecoder decoder = new ContactRowDecoder(cursor);
+        if (cursor.moveToFirst()) {
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                long id = decoder.getId(cursor);
+                long lastUpdated = decoder.getLastUpdated(cursor);
+                ContactImpl contact = mContactsById.get(id);
+
+                if (contact == null || lastUpdated > mLastSyncTimestamp) {
+                    ContactImpl oldContact = contact;
+                    contact = decoder.decode(cursor);
+                    contact.setDetails(mDetailsById.get(id));
+                    contact.setGroupIds(mGroupIdsById.get(id));
+
+                    // the checked state of an updated contact is in the SelectionIndex already
+                    // (even if the old instance is checked or un-checked before this one is shown)
+                    attach(contact);
+                    decodedContacts.add(contact);
+                    if (oldContact != null) {
+                        changedIds.add(id);
+                    }
+                    else {
+                        nrOfNewContacts++;
+                    }
+                    lastSyncTimestamp = Math.max(lastSyncTimestamp, lastUpdated);
+                }
+
+                contactsById.put(id, contact);
+            }
+        }
+
+        // all contacts that are neither new nor in the cursor any more have been deleted
+        int nrOfDeletedContacts = mContactsById.size() + nrOfNewContacts - contactsById.size();
+        Set<Long> removedIds = new HashSet<>(changedIds);
+        if (nrOfDeletedContacts > 0) {
+            for (Long id : mContactsById.keySet()) {
+                if (! contactsById.containsKey(id)) {
+                    mSelectionIndex.setChecked(id, false);
+                    removedIds.add(id);
+                }
+            }
+        }
+
+        mContactsById.clear();
+        mContactsById.putAll(contactsById);
+        mLastSyncTimestamp = lastSyncTimestamp;
+
+        // nothing changed -> keep the current list
+        if (changedIds.isEmpty() && nrOfNewContacts == 0 && nrOfDeletedContacts == 0) return;
+
+        // the cursor order needs no sorting, otherwise only the decoded contacts are sorted in
+        List<ContactImpl> contacts;
+        if (ContactSorter.isCursorOrder(mSortOrder)) {
+            mSorter.reset();
+            for (ContactImpl contact : contactsById.values()) {
+                mSorter.add(contact);
+            }
+            contacts = mSorter.getSnapshot();
+        }
+        else {
+            contacts = mSorter.patch(removedIds, decodedContacts);
+        }
+
+        ContactSortOrder shownSortOrder = mShownSortOrder;
+        List<ContactImpl> oldContacts = getContacts(shownSortOrder);
+        mSnapshotWritten = false;
+        mContacts = withIndex(contacts, cursor);
+        postContactOrderings();
+        postContactsChanged(mContacts, changedIds, calculateDiff(oldContacts, getContacts(shownSortOrder), changedIds));
+
+        mJoinPending = true;
+        joinContactsAndGroups();
+
+        writeSnapshot();
+    }
+
+    private void readContactDetails(Cursor cursor) {
+        Map<Long, ContactDetails> detailsById = new HashMap<>();
+
+        if (cursor != null && cursor.moveToFirst()) {
+            ContactDetailsRowDecoder decoder = new ContactDetailsRowDecoder(cursor);
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                long contactId = decoder.getContactId(cursor);
+                ContactDetails details = detailsById.get(contactId);
+                if (details == null) {
+                    details = new ContactDetails();
+                    detailsById.put(contactId, details);
+                }
+                decoder.decode(cursor, details);
+            }
+        }
+
+        // the details are complete -> attach them to the contacts (if they have loaded already)
+        mDetailsLoaded = true;
+        mDetailsById = detailsById;
+        if (mContacts.isEmpty()) return;
+
+        for (ContactImpl contact : getCreatedContacts()) {
+            contact.setDetails(detailsById.get(contact.getId()));
+        }
+
+        // the contacts are sorted by the provider's sort keys, the details don't change the order
+        postContactsUpdated(mContacts);
+
+        // the details don't change the group memberships -> no need to join contacts and groups
+        writeSnapshot();
+    }
+
+    private void readGroupMemberships(Cursor cursor) {
+        Map<Long, Set<Long>> groupIdsById = new HashMap<>();
+
+        if (cursor != null && cursor.moveToFirst()) {
+            GroupMembershipRowDecoder decoder = new GroupMembershipRowDecoder(cursor);
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                long contactId = decoder.getContactId(cursor);
+                Set<Long> groupIds = groupIdsById.get(contactId);
+                if (groupIds == null) {
+                    groupIds = new HashSet<>();
+                    groupIdsById.put(contactId, groupIds);
+                }
+                groupIds.add(decoder.getGroupId(cursor));
+            }
+        }
+
+        // the memberships are complete -> attach them to the contacts (if they have loaded already)
+        Map<Long, LongArraySet> groupIdSets = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : groupIdsById.entrySet()) {
+            groupIdSets.put(entry.getKey(), LongArraySet.of(entry.getValue()));
+        }
+        mGroupIdsLoaded = true;
+        mGroupIdsById = groupIdSets;
+        for (ContactImpl contact : getCreatedContacts()) {
+            contact.setGroupIds(groupIdSets.get(contact.getId()));
+        }
+
+        mJoinPending = true;
+        joinContactsAndGroups();
+
+        writeSnapshot();
+    }
+
+    // ****************************************** Group Methods *******************************************
+
+    private void readGroups(Cursor cursor, Set<Long> selectedGroupIds) {
+        mGroups.clear();
+
+        GroupRowDecoder decoder = new GroupRowDecoder(cursor);
+        if (cursor.moveToFirst()) {
+            cursor.moveToPrevious();
+            while (cursor.moveToNext()) {
+                if (mCancelled) return;
+
+                GroupImpl group = decoder.decode(cursor);
+
+                mGroups.add(group);
+
+                boolean isChecked = selectedGroupIds.contains( group.getId() );
+                group.setChecked(isChecked, true);
+
+                group.addOnContactCheckedListener(mGroupListener);
+            }
+        }
+
+        // sorted once, the visible groups keep this order
+        Collections.sort(mGroups, GROUP_COMPARATOR);
+
+        mGroupsLoaded = true;
+        mMembership = null;
+        mJoinPending = true;
+        joinContactsAndGroups();
+    }
+
+    /**
+     * Join contacts and groups.
+     * This can happen once the contacts, the group memberships and the groups have loaded.
+     * Nothing to do as long as the groups haven't been requested or if nothing has changed since
+     * the last join.
+     *
+     * The membership is built anew and replaces the old one so the ui thread never sees one that
+     * is being modified. The contacts look up their groups in the membership published by the
+     * SelectionIndex. The groups are only posted if the membership has really changed (e.g. not
+     * if a contact without groups was added).
+     */
+    private void joinContactsAndGroups() {
+        if (! mGroupsLoaded || ! mJoinPending) return;
+        mJoinPending = false;
+
+        // map contacts to groups and groups to contacts
+        GroupMembership membership = GroupMembership.build(mContacts, mGroupIdsById, mGroups);
+
+        // only groups with contacts are visible (mGroups is sorted already)
+        List<GroupImpl> visibleGroups = new ArrayList<>();
+        for (int g = 0, size = mGroups.size(); g < size; g++) {
+            if (membership.getContactCount(g) > 0) {
+                visibleGroups.add(mGroups.get(g));
+            }
+        }
+
+        // the groups get the membership and their recounted checked contacts in one step
+        mSelectionIndex.setMembership(membership, mGroups);
+
+        boolean hasChanged = ! membership.hasSameMembers(mMembership);
+        mMembership = membership;
+        if (hasChanged) {
+            postGroupsLoaded(Collections.unmodifiableList(new ArrayList<>(mGroups)),
+                             Collections.unmodifiableList(visibleGroups));
+        }
+    }
+
+    // ****************************************** Post Results *******************************************
+
+    /**
+     * @return the search boosts of the contacts (read without creating them) or Null if they
+     * aren't needed.
+     */
+    private int[] getSearchBoosts(List<ContactImpl> contacts) {
+        if (! mComputeSearchBoosts) return null;
+
+        int[] boosts = new int[contacts.size()];
+        for (int pos = 0; pos < boosts.length; pos++) {
+            boosts[pos] = ContactStore.getSearchBoost(contacts, pos);
+        }
+        return boosts;
+    }
+
+    private void postContactsLoaded(final List<ContactImpl> contacts) {
+        final int[] searchBoosts = getSearchBoosts(contacts);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    mCallback.onContactsLoaded(contacts, searchBoosts);
+                }
+            }
+        });
+    }
+
+    private void postContactsUpdated(final List<ContactImpl> contacts) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    mCallback.onContactsUpdated(contacts);
+                }
+            }
+        });
+    }
+
+    /**
+     * Attach the alphabetic index to the (completely read) contacts: the one the provider returned
+     * with the cursor if the cursor is in the right order, otherwise one built with ICU.
+     */
+    private List<ContactImpl> withIndex(List<ContactImpl> contacts, Cursor cursor) {
+        ContactIndex index = ContactSorter.isCursorOrder(mSortOrder) ? ContactIndex.fromCursor(cursor) : null;
+        if (index == null || ! index.fits(contacts.size())) {
+            index = ContactIndex.build(contacts, mSortOrder);
+        }
+        return IndexedContactList.wrap(contacts, index, mSortOrder);
+    }
+
+    /**
+     * Sort mContacts in all sort orders (if requested).
+     * The orderings don't change with the details, so this is only needed when the contacts have
+     * been read (completely) or patched.
+     */
+    private void postContactOrderings() {
+        if (! mBuildOrderings) return;
+
+        final ContactOrderings orderings = new ContactOrderings(mContacts, mSortOrder);
+        mOrderings = orderings;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    mCallback.onContactOrderingsLoaded(orderings);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return mContacts in the given sort order (the instance the ui gets for that order).
+     */
+    private List<ContactImpl> getContacts(ContactSortOrder sortOrder) {
+        return mOrderings != null && mOrderings.isFor(mContacts) ? mOrderings.getContacts(sortOrder) : mContacts;
+    }
+
+    /**
+     * Calculate the changes between two contact lists here rather than on the ui thread (the ids
+     * are read without creating the contacts).
+     */
+    private static ContactsDiff calculateDiff(final List<ContactImpl> oldContacts, final List<ContactImpl> contacts,
+                                              final Set<Long> changedIds) {
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldContacts.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return contacts.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                return ContactStore.getContactId(oldContacts, oldPos) == ContactStore.getContactId(contacts, newPos);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                return ! changedIds.contains(ContactStore.getContactId(contacts, newPos));
+            }
+        });
+        return new ContactsDiff(oldContacts, result);
+    }
+
+    private void postContactsChanged(final List<ContactImpl> contacts, final Set<Long> changedIds,
+                                     final ContactsDiff diff) {
+        final int[] searchBoosts = getSearchBoosts(contacts);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    mCallback.onContactsChanged(contacts, searchBoosts, changedIds, diff);
+                }
+            }
+        });
+    }
+
+    private void postGroupsLoaded(final List<GroupImpl> groups, final List<GroupImpl> visibleGroups) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (! mCancelled) {
+                    mCallback.onGroupsLoaded(groups, visibleGroups);
+                }
+            }
+        });
+    }
+
+}
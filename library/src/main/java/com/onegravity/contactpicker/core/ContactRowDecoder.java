@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+/**
+ * Creates ContactImpl instances from the rows of a ContactsContract.Contacts cursor.
+ *
+ * The column indexes are resolved once when the decoder is created, so a decoder instance must
+ * only be used with the cursor it was created for.
+ */
+class ContactRowDecoder {
+
+    // separates family and given name in the alternative display name
+    static final String NAME_SEPARATOR = ", ";
+
+    private final int mIdIndex;
+    private final int mLookupKeyIndex;
+    private final int mDisplayNameIndex;
+    private final int mDisplayNameAlternativeIndex;
+    private final int mPhotoUriIndex;
+    private final int mSortKeyPrimaryIndex;
+    private final int mSortKeyAlternativeIndex;
+    private final int mStarredIndex;
+    private final int mTimesContactedIndex;
+    private final int mLastUpdatedIndex;
+
+    ContactRowDecoder(Cursor cursor) {
+        mIdIndex = cursor.getColumnIndex(ContactsContract.Contacts._ID);
+        mLookupKeyIndex = cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY);
+        mDisplayNameIndex = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME_PRIMARY);
+        mDisplayNameAlternativeIndex = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME_ALTERNATIVE);
+        mPhotoUriIndex = cursor.getColumnIndex(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI);
+        mSortKeyPrimaryIndex = cursor.getColumnIndex(ContactsContract.Contacts.SORT_KEY_PRIMARY);
+        mSortKeyAlternativeIndex = cursor.getColumnIndex(ContactsContract.Contacts.SORT_KEY_ALTERNATIVE);
+        mStarredIndex = cursor.getColumnIndex(ContactsContract.Contacts.STARRED);
+        mTimesContactedIndex = cursor.getColumnIndex(ContactsContract.Contacts.TIMES_CONTACTED);
+        // only part of the projection on API 18 and higher
+        mLastUpdatedIndex = cursor.getColumnIndex(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP);
+    }
+
+    long getId(Cursor cursor) {
+        return cursor.getLong(mIdIndex);
+    }
+
+    /**
+     * @return the time the contact was last updated or 0 if that's unknown.
+     */
+    long getLastUpdated(Cursor cursor) {
+        return mLastUpdatedIndex >= 0 ? cursor.getLong(mLastUpdatedIndex) : 0;
+    }
+
+    ContactImpl decode(Cursor cursor) {
+        long id = cursor.getLong(mIdIndex);
+        String lookupKey = cursor.getString(mLookupKeyIndex);
+        String displayName = cursor.getString(mDisplayNameIndex);
+        String displayNameAlternative = getString(cursor, mDisplayNameAlternativeIndex);
+        String photoUri = cursor.getString(mPhotoUriIndex);
+        String sortKeyPrimary = getString(cursor, mSortKeyPrimaryIndex);
+        String sortKeyAlternative = getString(cursor, mSortKeyAlternativeIndex);
+
+        String firstName = "---";
+        String lastName = "---";
+        int comma = getNameSeparator(displayName, displayNameAlternative);
+        if (comma >= 0) {
+            // the alternative display name is "family name, given name"
+            lastName = displayNameAlternative.substring(0, comma).trim();
+            firstName = displayNameAlternative.substring(comma + NAME_SEPARATOR.length()).trim();
+        }
+        else if (displayName != null) {
+            // first and second word of the display name, separated by whitespace
+            int length = displayName.length();
+            int start = skipWhitespace(displayName, 0, length);
+            int end = skipWord(displayName, start, length);
+            firstName = displayName.substring(start, end);
+            start = skipWhitespace(displayName, end, length);
+            end = skipWord(displayName, start, length);
+            lastName = displayName.substring(start, end);
+        }
+
+        ContactImpl contact = new ContactImpl(id, lookupKey, displayName, firstName, lastName, photoUri,
+                                              sortKeyPrimary, sortKeyAlternative);
+        contact.setUsage(getInt(cursor, mStarredIndex) != 0, getInt(cursor, mTimesContactedIndex));
+        return contact;
+    }
+
+    private static String getString(Cursor cursor, int columnIndex) {
+        return columnIndex >= 0 ? cursor.getString(columnIndex) : null;
+    }
+
+    static int getInt(Cursor cursor, int columnIndex) {
+        return columnIndex >= 0 ? cursor.getInt(columnIndex) : 0;
+    }
+
+    /**
+     * The provider builds the alternative display name as "family name, given name" if the
+     * contact has a structured name. If it's the same as the primary display name the contact has
+     * no structured name (e.g. a company or an email address) and the separator is meaningless.
+     *
+     * @return the position of the separator in the alternative display name or -1 if there's none.
+     */
+    static int getNameSeparator(String displayName, String displayNameAlternative) {
+        if (displayNameAlternative == null || displayNameAlternative.equals(displayName)) return -1;
+
+        return displayNameAlternative.indexOf(NAME_SEPARATOR);
+    }
+
+    private static int skipWhitespace(String s, int pos, int length) {
+        while (pos < length && Character.isWhitespace(s.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static int skipWord(String s, int pos, int length) {
+        while (pos < length && ! Character.isWhitespace(s.charAt(pos))) pos++;
+        return pos;
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The ContactSnapshot persists the contacts (including their details and group memberships) in a
+ * compact binary file so the contact list can be shown right away the next time the picker is
+ * started. The snapshot is reconciled with the contacts provider once the loaders deliver.
+ *
+ * File format (all numbers big-endian, strings as UTF-8 with a length prefix, -1 for null):
+ * <pre>
+ * int version, String key, int nrOfContacts
+ * per contact: long id, String lookupKey, String displayName, String firstName, String lastName,
+ *              String photoUri, String sortKeyPrimary, String sortKeyAlternative,
+ *              boolean starred, int timesContacted, 3 x (int size, size x (int type, String value)) for
+ *              email / phone / address, int nrOfGroups, nrOfGroups x long groupId
+ * </pre>
+ *
+ * The key identifies the query the snapshot was created from (e.g. only contacts with phone
+ * numbers), a snapshot with a different key (or version) is ignored.
+ */
+class ContactSnapshot {
+
+    static final int VERSION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * The minimum number of bytes of a contact, an email / phone / address and a group id in the
+     * file (used to validate the counts before anything is allocated).
+     */
+    private static final int MIN_CONTACT_BYTES = 8 + 7 * 4 + 1 + 4 + 3 * 4 + 4;
+    private static final int MIN_DETAIL_BYTES = 4 + 4;
+    private static final int GROUP_ID_BYTES = 8;
+
+    private final File mFile;
+    private final String mKey;
+
+    ContactSnapshot(File file, String key) {
+        mFile = file;
+        mKey = key;
+    }
+
+    /**
+     * Read the contacts from the snapshot file.
+     * The details and the group ids are attached to the contacts.
+     * A corrupt or truncated file is deleted, it never fails the picker (all counts and lengths are
+     * checked against the remaining bytes before anything is allocated).
+     *
+     * @return the contacts in the order they were written or Null if there's no valid snapshot.
+     */
+    List<ContactImpl> read() {
+        if (! mFile.exists()) return null;
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != VERSION || ! mKey.equals(readString(buffer))) return null;
+
+            int nrOfContacts = readCount(buffer, MIN_CONTACT_BYTES);
+            List<ContactImpl> contacts = new ArrayList<>(nrOfContacts);
+            for (int i = 0; i < nrOfContacts; i++) {
+                long id = buffer.getLong();
+                String lookupKey = readString(buffer);
+                String displayName = readString(buffer);
+                String firstName = readString(buffer);
+                String lastName = readString(buffer);
+                String photoUri = readString(buffer);
+                String sortKeyPrimary = readString(buffer);
+                String sortKeyAlternative = readString(buffer);
+                ContactImpl contact = new ContactImpl(id, lookupKey, displayName, firstName, lastName, photoUri,
+                                                      sortKeyPrimary, sortKeyAlternative);
+                contact.setUsage(buffer.get() != 0, buffer.getInt());
+
+                ContactDetails details = new ContactDetails();
+                details.setFirstName(firstName);
+                details.setLastName(lastName);
+                for (int j = readCount(buffer, MIN_DETAIL_BYTES); j > 0; j--) {
+                    details.setEmail(buffer.getInt(), readString(buffer));
+                }
+                for (int j = readCount(buffer, MIN_DETAIL_BYTES); j > 0; j--) {
+                    details.setPhone(buffer.getInt(), readString(buffer));
+                }
+                for (int j = readCount(buffer, MIN_DETAIL_BYTES); j > 0; j--) {
+                    details.setAddress(buffer.getInt(), readString(buffer));
+                }
+                contact.setDetails(details);
+
+                long[] groupIds = new long[readCount(buffer, GROUP_ID_BYTES)];
+                for (int j = 0; j < groupIds.length; j++) {
+                    groupIds[j] = buffer.getLong();
+                }
+                contact.setGroupIds(LongArraySet.of(groupIds));
+
+                contacts.add(contact);
+            }
+            return contacts;
+        }
+        catch (IOException | RuntimeException e) {
+            // RuntimeException: BufferUnderflowException, IllegalArgumentException, ...
+            Log.w(getClass().getSimpleName(), "Failed to read contact snapshot: " + e.getMessage());
+            mFile.delete();
+            return null;
+        }
+        finally {
+            close(file);
+        }
+    }
+
+    /**
+     * Write the contacts to the snapshot file.
+     * The file is written to a temporary file first and then renamed so a snapshot is never read
+     * half written.
+     */
+    void write(List<ContactImpl> contacts) {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            out.writeInt(VERSION);
+            writeString(out, mKey);
+
+            out.writeInt(contacts.size());
+            for (ContactImpl contact : contacts) {
+                out.writeLong(contact.getId());
+                writeString(out, contact.getLookupKey());
+                writeString(out, contact.getDisplayName());
+                writeString(out, contact.getFirstName());
+                writeString(out, contact.getLastName());
+                Uri photoUri = contact.getPhotoUri();
+                writeString(out, photoUri != null ? photoUri.toString() : null);
+                writeString(out, contact.getSortKey(ContactSortOrder.AUTOMATIC));
+                writeString(out, contact.getSortKey(ContactSortOrder.LAST_NAME));
+                out.writeBoolean(contact.isStarred());
+                out.writeInt(contact.getTimesContacted());
+
+                writeMap(out, contact.getMapEmail());
+                writeMap(out, contact.getMapPhone());
+                writeMap(out, contact.getMapAddress());
+
+                Set<Long> groupIds = contact.getGroupIds();
+                out.writeInt(groupIds.size());
+                for (Long groupId : groupIds) {
+                    out.writeLong(groupId);
+                }
+            }
+
+            out.close();
+            out = null;
+
+            if (! tmpFile.renameTo(mFile)) {
+                Log.w(getClass().getSimpleName(), "Failed to rename contact snapshot");
+                tmpFile.delete();
+            }
+        }
+        catch (IOException e) {
+            Log.w(getClass().getSimpleName(), "Failed to write contact snapshot: " + e.getMessage());
+            tmpFile.delete();
+        }
+        finally {
+            close(out);
+        }
+    }
+
+    /**
+     * @return a count of items read from the buffer.
+     * @throws IllegalArgumentException if the count is negative or the buffer can't hold that many
+     * items of the given minimum size.
+     */
+    private static int readCount(ByteBuffer buffer, int minBytesPerItem) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minBytesPerItem) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) return null;
+        if (length < -1 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<Integer, String> values) throws IOException {
+        out.writeInt(values.size());
+        for (Map.Entry<Integer, String> entry : values.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException ignore) {}
+        }
+    }
+
+}
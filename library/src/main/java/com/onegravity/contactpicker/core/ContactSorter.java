@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The ContactSorter keeps a sorted snapshot of the contacts while they are read from the cursor.
+ *
+ * If the cursor delivers the contacts in the requested order already (it's sorted by the
+ * provider's sort key of the sort order) no sorting is done at all. Otherwise each contact's
+ * collation key is computed once when it's added (see CollationSort), new contacts are collected
+ * and merged into the snapshot in one go when a new snapshot is requested: the batch is sorted on
+ * its own (n log n for the batch) and then merged with the already sorted snapshot (linear).
+ *
+ * After the contacts provider changed, the snapshot is patched: the changed and deleted contacts
+ * are removed and the changed and new ones are inserted at their (binary searched) positions.
+ *
+ * Snapshots are never modified once they have been returned, a merge always creates a new list.
+ */
+class ContactSorter {
+
+    /**
+     * A contact with its precomputed collation key.
+     */
+    private static class Entry {
+        final ContactImpl mContact;
+        final byte[] mKey;
+
+        Entry(ContactImpl contact, byte[] key) {
+            mContact = contact;
+            mKey = key;
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return CollationSort.compare(lhs.mKey, rhs.mKey);
+        }
+    };
+
+    private final ContactSortOrder mSortOrder;
+
+    /*
+     * True if the cursor is sorted by the same criteria as the contact list.
+     */
+    private final boolean mIsCursorOrder;
+
+    /*
+     * Only used if the contacts aren't in cursor order.
+     */
+    private final CollationSort mCollationSort;
+
+    private List<ContactImpl> mSnapshot = Collections.emptyList();
+    private final List<ContactImpl> mPending = new ArrayList<>();
+
+    /*
+     * The entries of mSnapshot and mPending (only if the contacts aren't in cursor order).
+     */
+    private Entry[] mSnapshotEntries = new Entry[0];
+    private final List<Entry> mPendingEntries = new ArrayList<>();
+
+    ContactSorter(ContactSortOrder sortOrder) {
+        mSortOrder = sortOrder;
+        mIsCursorOrder = isCursorOrder(sortOrder);
+        mCollationSort = mIsCursorOrder ? null : new CollationSort();
+    }
+
+    /**
+     * The primary sort key follows the user's display name preference ("given name first" or
+     * "family name first"), so only the first name order isn't supplied by the provider.
+     *
+     * @return True if the contacts cursor can be sorted by the given sort order.
+     */
+    static boolean isCursorOrder(ContactSortOrder sortOrder) {
+        return sortOrder != ContactSortOrder.FIRST_NAME;
+    }
+
+    /**
+     * Start over with an empty snapshot.
+     */
+    void reset() {
+        mSnapshot = Collections.emptyList();
+        mPending.clear();
+        mSnapshotEntries = new Entry[0];
+        mPendingEntries.clear();
+    }
+
+    /**
+     * Add a contact, it will be part of the next snapshot.
+     */
+    void add(ContactImpl contact) {
+        if (mIsCursorOrder) {
+            mPending.add(contact);
+        }
+        else {
+            byte[] key = mCollationSort.getKey(contact.getSortKey(mSortOrder));
+            mPendingEntries.add(new Entry(contact, key));
+        }
+    }
+
+    /**
+     * @return the number of contacts added since the last snapshot was created.
+     */
+    int getNrOfPending() {
+        return mIsCursorOrder ? mPending.size() : mPendingEntries.size();
+    }
+
+    /**
+     * @return a sorted (and immutable) list of all contacts added so far.
+     */
+    List<ContactImpl> getSnapshot() {
+        if (mIsCursorOrder && ! mPending.isEmpty()) {
+            List<ContactImpl> merged = new ArrayList<>(mSnapshot.size() + mPending.size());
+            merged.addAll(mSnapshot);
+            merged.addAll(mPending);
+            mPending.clear();
+            mSnapshot = Collections.unmodifiableList(merged);
+        }
+        else if (! mIsCursorOrder && ! mPendingEntries.isEmpty()) {
+            Entry[] pending = mPendingEntries.toArray(new Entry[mPendingEntries.size()]);
+            mPendingEntries.clear();
+            CollationSort.sort(pending, ENTRY_COMPARATOR);
+            mSnapshotEntries = merge(mSnapshotEntries, pending);
+
+            List<ContactImpl> contacts = new ArrayList<>(mSnapshotEntries.length);
+            for (Entry entry : mSnapshotEntries) {
+                contacts.add(entry.mContact);
+            }
+            mSnapshot = Collections.unmodifiableList(contacts);
+        }
+
+        return mSnapshot;
+    }
+
+    /**
+     * Patch the snapshot after the contacts provider changed (only if the contacts aren't in cursor
+     * order, in cursor order they are simply added again in the order of the cursor which needs no
+     * sorting at all).
+     *
+     * @param removedIds the ids of the changed and the deleted contacts.
+     * @param added the changed and the new contacts.
+     * @return the patched snapshot.
+     */
+    List<ContactImpl> patch(Set<Long> removedIds, Collection<ContactImpl> added) {
+        if (mIsCursorOrder) {
+            throw new IllegalStateException("Contacts in cursor order can't be patched");
+        }
+
+        // pending contacts are part of the snapshot to patch
+        getSnapshot();
+
+        Entry[] entries = mSnapshotEntries;
+        int size = 0;
+        if (! removedIds.isEmpty()) {
+            entries = new Entry[mSnapshotEntries.length];
+            for (Entry entry : mSnapshotEntries) {
+                if (! removedIds.contains(entry.mContact.getId())) {
+                    entries[size++] = entry;
+                }
+            }
+        }
+        else {
+            size = entries.length;
+        }
+
+        Entry[] inserted = new Entry[added.size()];
+        int nrOfInserted = 0;
+        for (ContactImpl contact : added) {
+            byte[] key = mCollationSort.getKey(contact.getSortKey(mSortOrder));
+            inserted[nrOfInserted++] = new Entry(contact, key);
+        }
+        CollationSort.sort(inserted, ENTRY_COMPARATOR);
+
+        // copy the remaining entries in chunks up to the insert position of each new entry
+        Entry[] target = new Entry[size + nrOfInserted];
+        int from = 0, k = 0;
+        for (Entry entry : inserted) {
+            int to = insertPosition(entries, from, size, entry);
+            System.arraycopy(entries, from, target, k, to - from);
+            k += to - from;
+            target[k++] = entry;
+            from = to;
+        }
+        System.arraycopy(entries, from, target, k, size - from);
+        mSnapshotEntries = target;
+
+        List<ContactImpl> contacts = new ArrayList<>(target.length);
+        for (Entry entry : target) {
+            contacts.add(entry.mContact);
+        }
+        mSnapshot = Collections.unmodifiableList(contacts);
+        return mSnapshot;
+    }
+
+    /**
+     * @return the position after the last entry (between from and to) that is less than or equal
+     * to the given entry (equal entries already in the snapshot go first like in merge).
+     */
+    private static int insertPosition(Entry[] entries, int from, int to, Entry entry) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ENTRY_COMPARATOR.compare(entries[mid], entry) <= 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merge two sorted arrays.
+     * Elements of the first array go first if they are equal to ones in the second array.
+     */
+    private static Entry[] merge(Entry[] first, Entry[] second) {
+        Entry[] target = new Entry[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length && j < second.length) {
+            target[k++] = ENTRY_COMPARATOR.compare(first[i], second[j]) <= 0 ? first[i++] : second[j++];
+        }
+        while (i < first.length) target[k++] = first[i++];
+        while (j < second.length) target[k++] = second[j++];
+        return target;
+    }
+
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+import com.onegravity.contactpicker.contact.ContactCheckedList;
+import com.onegravity.contactpicker.contact.ContactLetterList;
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The ContactStore is a columnar alternative to creating a ContactImpl for every row of the
+ * contacts cursor.
+ *
+ * The rows are stored in parallel arrays: the ids in a long[] and the strings (lookup key, display
+ * names, photo uri and sort keys) as offset / length pairs into one shared char[] arena which is
+ * filled with Cursor.copyStringToBuffer, so reading the cursor allocates no objects per contact.
+ * The first and last name are ranges within the display names and a string that's equal to the
+ * display name (as the sort keys often are) shares its range.
+ *
+ * The contacts are published as a ContactList (an int[] of row numbers), which creates the
+ * ContactImpl of a row only when it's accessed for the first time (usually when the ContactAdapter
+ * binds it). Once created, a row's ContactImpl is kept so it's always the same instance for the
+ * same row. Usually the cursor is sorted by the sort key of the sort order already, otherwise the
+ * rows are sorted by their collation keys (see CollationSort.Keys) which are computed when the
+ * rows are added. The ids, sort keys, contact letters, search boosts and checked states (from the
+ * SelectionIndex) of the rows can be read without creating their contacts (see ContactIdList).
+ *
+ * Rows are added by the ContactProcessor thread while the ui thread might create contacts for the
+ * rows that have been published already, hence all access to the columns is synchronized.
+ */
+class ContactStore {
+
+    /**
+     * Called when the ContactImpl of a row has been created, e.g. to attach its details and set
+     * its checked state.
+     */
+    interface ContactFactory {
+        void onContactCreated(ContactImpl contact);
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // offsets of the strings of a row in mStrings (each string is an offset / length pair)
+    private static final int LOOKUP_KEY = 0;
+    private static final int DISPLAY_NAME = 2;
+    private static final int DISPLAY_NAME_ALTERNATIVE = 4;
+    private static final int PHOTO_URI = 6;
+    private static final int FIRST_NAME = 8;
+    private static final int LAST_NAME = 10;
+    private static final int SORT_KEY_PRIMARY = 12;
+    private static final int SORT_KEY_ALTERNATIVE = 14;
+    private static final int STRIDE = 16;
+
+    // used if a name is empty (same as ContactImpl / ContactElementImpl)
+    private static final String NO_NAME = "---";
+
+    private final ContactSortOrder mSortOrder;
+    private final ContactFactory mFactory;
+    private final SelectionIndex mSelectionIndex;
+
+    private final int mIdIndex;
+    private final int mLookupKeyIndex;
+    private final int mDisplayNameIndex;
+    private final int mDisplayNameAlternativeIndex;
+    private final int mPhotoUriIndex;
+    private final int mSortKeyPrimaryIndex;
+    private final int mSortKeyAlternativeIndex;
+    private final int mStarredIndex;
+    private final int mTimesContactedIndex;
+    private final CharArrayBuffer mBuffer = new CharArrayBuffer(64);
+
+    private int mSize;
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private int[] mUsage = new int[INITIAL_CAPACITY];     // timesContacted << 1 | starred
+    private int[] mStrings = new int[INITIAL_CAPACITY * STRIDE];
+    private char[] mChars = new char[INITIAL_CAPACITY * 32];
+    private int mCharsSize;
+    private ContactImpl[] mContacts = new ContactImpl[INITIAL_CAPACITY];
+
+    /*
+     * The collation keys of the rows (Null if the cursor is in the right order already).
+     */
+    private final CollationSort mCollationSort;
+    private CollationSort.Keys mKeys;
+
+    ContactStore(Cursor cursor, ContactSortOrder sortOrder, ContactFactory factory, SelectionIndex selectionIndex) {
+        mSortOrder = sortOrder;
+        mFactory = factory;
+        mSelectionIndex = selectionIndex;
+        if (! ContactSorter.isCursorOrder(sortOrder)) {
+            mCollationSort = new CollationSort();
+            mKeys = new CollationSort.Keys(INITIAL_CAPACITY);
+        }
+        else {
+            mCollationSort = null;
+        }
+
+        mIdIndex = cursor.getColumnIndex(ContactsContract.Contacts._ID);
+        mLookupKeyIndex = cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY);
+        mDisplayNameIndex = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME_PRIMARY);
+        mDisplayNameAlternativeIndex = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME_ALTERNATIVE);
+        mPhotoUriIndex = cursor.getColumnIndex(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI);
+        mSortKeyPrimaryIndex = cursor.getColumnIndex(ContactsContract.Contacts.SORT_KEY_PRIMARY);
+        mSortKeyAlternativeIndex = cursor.getColumnIndex(ContactsContract.Contacts.SORT_KEY_ALTERNATIVE);
+        mStarredIndex = cursor.getColumnIndex(ContactsContract.Contacts.STARRED);
+        mTimesContactedIndex = cursor.getColumnIndex(ContactsContract.Contacts.TIMES_CONTACTED);
+    }
+
+    /**
+     * Add the current row of the cursor.
+     *
+     * @return the id of the contact.
+     */
+    synchronized long add(Cursor cursor) {
+        if (mSize == mIds.length) {
+            int capacity = mSize * 2;
+            mIds = Arrays.copyOf(mIds, capacity);
+            mUsage = Arrays.copyOf(mUsage, capacity);
+            mStrings = Arrays.copyOf(mStrings, capacity * STRIDE);
+            mContacts = Arrays.copyOf(mContacts, capacity);
+        }
+
+        int row = mSize++;
+        long id = cursor.getLong(mIdIndex);
+        mIds[row] = id;
+        mUsage[row] = ContactRowDecoder.getInt(cursor, mTimesContactedIndex) << 1 |
+                      (ContactRowDecoder.getInt(cursor, mStarredIndex) != 0 ? 1 : 0);
+
+        int base = row * STRIDE;
+        copyString(cursor, mLookupKeyIndex, base + LOOKUP_KEY, -1);
+        copyString(cursor, mDisplayNameIndex, base + DISPLAY_NAME, -1);
+        copyString(cursor, mDisplayNameAlternativeIndex, base + DISPLAY_NAME_ALTERNATIVE, base + DISPLAY_NAME);
+        copyString(cursor, mPhotoUriIndex, base + PHOTO_URI, -1);
+        copyString(cursor, mSortKeyPrimaryIndex, base + SORT_KEY_PRIMARY, base + DISPLAY_NAME);
+        copyString(cursor, mSortKeyAlternativeIndex, base + SORT_KEY_ALTERNATIVE, base + DISPLAY_NAME_ALTERNATIVE);
+
+        int comma = getNameSeparator(base);
+        if (comma >= 0) {
+            // the alternative display name is "family name, given name" (see ContactRowDecoder)
+            int start = mStrings[base + DISPLAY_NAME_ALTERNATIVE];
+            int end = start + mStrings[base + DISPLAY_NAME_ALTERNATIVE + 1];
+            setTrimmedRange(base + LAST_NAME, start, comma);
+            setTrimmedRange(base + FIRST_NAME, comma + ContactRowDecoder.NAME_SEPARATOR.length(), end);
+        }
+        else {
+            // first and second word of the display name, separated by whitespace (see ContactRowDecoder)
+            int start = mStrings[base + DISPLAY_NAME];
+            int length = mStrings[base + DISPLAY_NAME + 1];
+            int end = start + Math.max(length, 0);
+            int pos = skipWhitespace(start, end);
+            int wordEnd = skipWord(pos, end);
+            mStrings[base + FIRST_NAME] = pos;
+            mStrings[base + FIRST_NAME + 1] = wordEnd - pos;
+            pos = skipWhitespace(wordEnd, end);
+            wordEnd = skipWord(pos, end);
+            mStrings[base + LAST_NAME] = pos;
+            mStrings[base + LAST_NAME + 1] = wordEnd - pos;
+        }
+
+        if (mKeys != null) {
+            mKeys.add(mCollationSort.getKey(getSortKey(row, ContactSortOrder.FIRST_NAME)));
+        }
+
+        return id;
+    }
+
+    /**
+     * Same as ContactRowDecoder.getNameSeparator but on the arena.
+     *
+     * @return the position of the separator in mChars or -1 if there's none.
+     */
+    private int getNameSeparator(int base) {
+        int start = mStrings[base + DISPLAY_NAME_ALTERNATIVE];
+        int length = mStrings[base + DISPLAY_NAME_ALTERNATIVE + 1];
+        if (length < 0 || rangeEquals(base + DISPLAY_NAME_ALTERNATIVE, base + DISPLAY_NAME)) return -1;
+
+        for (int pos = start, end = start + length - 1; pos < end; pos++) {
+            if (mChars[pos] == ',' && mChars[pos + 1] == ' ') return pos;
+        }
+        return -1;
+    }
+
+    private void setTrimmedRange(int stringIndex, int start, int end) {
+        start = skipWhitespace(start, end);
+        while (end > start && Character.isWhitespace(mChars[end - 1])) end--;
+        mStrings[stringIndex] = start;
+        mStrings[stringIndex + 1] = end - start;
+    }
+
+    private boolean rangeEquals(int stringIndex1, int stringIndex2) {
+        int length = mStrings[stringIndex1 + 1];
+        if (length != mStrings[stringIndex2 + 1]) return false;
+
+        for (int i = 0, pos1 = mStrings[stringIndex1], pos2 = mStrings[stringIndex2]; i < length; i++) {
+            if (mChars[pos1 + i] != mChars[pos2 + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param sameAs the string index of a string of the same row which is shared if it's equal to
+     *               this one (-1 if there's none).
+     */
+    private void copyString(Cursor cursor, int columnIndex, int stringIndex, int sameAs) {
+        if (columnIndex < 0 || cursor.isNull(columnIndex)) {
+            mStrings[stringIndex] = 0;
+            mStrings[stringIndex + 1] = -1;
+            return;
+        }
+
+        cursor.copyStringToBuffer(columnIndex, mBuffer);
+        int length = mBuffer.sizeCopied;
+        if (sameAs >= 0 && mStrings[sameAs + 1] == length) {
+            int start = mStrings[sameAs];
+            int i = 0;
+            while (i < length && mChars[start + i] == mBuffer.data[i]) i++;
+            if (i == length) {
+                mStrings[stringIndex] = start;
+                mStrings[stringIndex + 1] = length;
+                return;
+            }
+        }
+        if (mCharsSize + length > mChars.length) {
+            mChars = Arrays.copyOf(mChars, Math.max(mChars.length * 2, mCharsSize + length));
+        }
+        System.arraycopy(mBuffer.data, 0, mChars, mCharsSize, length);
+        mStrings[stringIndex] = mCharsSize;
+        mStrings[stringIndex + 1] = length;
+        mCharsSize += length;
+    }
+
+    private int skipWhitespace(int pos, int end) {
+        while (pos < end && Character.isWhitespace(mChars[pos])) pos++;
+        return pos;
+    }
+
+    private int skipWord(int pos, int end) {
+        while (pos < end && ! Character.isWhitespace(mChars[pos])) pos++;
+        return pos;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return a copy of the ids of all rows.
+     */
+    synchronized long[] getIds() {
+        return Arrays.copyOf(mIds, mSize);
+    }
+
+    /**
+     * @return the contacts that have been created so far.
+     */
+    synchronized List<ContactImpl> getCreatedContacts() {
+        List<ContactImpl> contacts = new ArrayList<>();
+        for (int row = 0; row < mSize; row++) {
+            if (mContacts[row] != null) {
+                contacts.add(mContacts[row]);
+            }
+        }
+        return contacts;
+    }
+
+    private synchronized ContactImpl getContact(int row) {
+        ContactImpl contact = mContacts[row];
+        if (contact == null) {
+            contact = newContact(row);
+            mContacts[row] = contact;
+            mFactory.onContactCreated(contact);
+        }
+        return contact;
+    }
+
+    /**
+     * @return the contact of the row if it has been created, otherwise a new instance initialized
+     * by the factory which isn't kept by the store (e.g. to write all contacts somewhere without
+     * keeping all of them in memory).
+     */
+    private synchronized ContactImpl getUncachedContact(int row, ContactFactory factory) {
+        ContactImpl contact = mContacts[row];
+        if (contact == null) {
+            contact = newContact(row);
+            factory.onContactCreated(contact);
+        }
+        return contact;
+    }
+
+    private ContactImpl newContact(int row) {
+        int base = row * STRIDE;
+        String displayName = getString(base + DISPLAY_NAME);
+        String firstName = getName(base + FIRST_NAME);
+        String lastName = getName(base + LAST_NAME);
+        ContactImpl contact = new ContactImpl(mIds[row], getString(base + LOOKUP_KEY), displayName,
+                                              firstName, lastName, getString(base + PHOTO_URI),
+                                              getString(base + SORT_KEY_PRIMARY), getString(base + SORT_KEY_ALTERNATIVE));
+        contact.setUsage((mUsage[row] & 1) != 0, mUsage[row] >>> 1);
+        return contact;
+    }
+
+    /**
+     * Same as ContactImpl.getSortKey(sortOrder) but without creating the contact.
+     */
+    private synchronized String getSortKey(int row, ContactSortOrder sortOrder) {
+        ContactImpl contact = mContacts[row];
+        if (contact != null) {
+            return contact.getSortKey(sortOrder);
+        }
+
+        int base = row * STRIDE;
+        if (sortOrder == ContactSortOrder.FIRST_NAME) {
+            return getName(base + FIRST_NAME) + " " + getName(base + LAST_NAME);
+        }
+
+        int sortKey = base + (sortOrder == ContactSortOrder.LAST_NAME ? SORT_KEY_ALTERNATIVE : SORT_KEY_PRIMARY);
+        if (mStrings[sortKey + 1] <= 0) {
+            // no sort key -> ContactImpl uses the display name
+            sortKey = base + DISPLAY_NAME;
+        }
+        return mStrings[sortKey + 1] > 0 ? getString(sortKey) : NO_NAME;
+    }
+
+    /**
+     * Same as ContactImpl.isChecked() but without creating the contact.
+     */
+    private synchronized boolean isChecked(int row) {
+        ContactImpl contact = mContacts[row];
+        return contact != null ? contact.isChecked() : mSelectionIndex.contains(mIds[row]);
+    }
+
+    /**
+     * Same as ContactImpl.setChecked(checked, true) but without creating the contact.
+     */
+    private void setChecked(int row, boolean checked) {
+        ContactImpl contact;
+        long id;
+        synchronized (this) {
+            contact = mContacts[row];
+            id = mIds[row];
+        }
+        if (contact != null) {
+            contact.setChecked(checked, true);
+        }
+        else {
+            mSelectionIndex.setChecked(id, checked);
+        }
+    }
+
+    /**
+     * @return the first or last name as the ContactImpl has it.
+     */
+    private String getName(int stringIndex) {
+        String name = getString(stringIndex);
+        return name == null || name.isEmpty() ? NO_NAME : name;
+    }
+
+    private String getString(int stringIndex) {
+        int length = mStrings[stringIndex + 1];
+        return length < 0 ? null : new String(mChars, mStrings[stringIndex], length);
+    }
+
+    // ****************************************** Sorting *******************************************
+
+    /**
+     * Sort all rows added so far.
+     *
+     * @return a list of the sorted contacts, the contacts are created on demand.
+     */
+    ContactList sort() {
+        int size = size();
+        int[] order = new int[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+        }
+        if (mKeys != null) {
+            // otherwise the cursor is sorted by the provider's sort key already
+            // (no need to synchronize, the keys are only modified by this, the processor, thread)
+            mKeys.sort(order);
+        }
+        return new ContactList(order);
+    }
+
+    /**
+     * Same as ContactImpl.getContactLetter(sortOrder) but without creating the contact.
+     */
+    private synchronized char getContactLetter(int row, ContactSortOrder sortOrder) {
+        ContactImpl contact = mContacts[row];
+        if (contact != null) {
+            return contact.getContactLetter(sortOrder);
+        }
+
+        int base = row * STRIDE;
+        if (sortOrder == ContactSortOrder.FIRST_NAME) {
+            return ContactImpl.toContactLetter(getName(base + FIRST_NAME).charAt(0));
+        }
+
+        int sortKey = base + (sortOrder == ContactSortOrder.LAST_NAME ? SORT_KEY_ALTERNATIVE : SORT_KEY_PRIMARY);
+        if (mStrings[sortKey + 1] <= 0) {
+            // no sort key -> ContactImpl uses the display name
+            sortKey = base + DISPLAY_NAME;
+        }
+        return mStrings[sortKey + 1] > 0 ?
+               ContactImpl.toContactLetter(mChars[mStrings[sortKey]]) :
+               NO_NAME.charAt(0);
+    }
+
+    private synchronized long getId(int row) {
+        return mIds[row];
+    }
+
+    private synchronized int getSearchBoost(int row) {
+        int usage = mUsage[row];
+        return ContactImpl.getSearchBoost((usage & 1) != 0, usage >>> 1);
+    }
+
+    /**
+     * @return the id of the contact at the position without creating it (if the list supports it).
+     */
+    static long getContactId(List<ContactImpl> contacts, int position) {
+        return contacts instanceof ContactIdList ?
+               ((ContactIdList) contacts).getContactId(position) :
+               contacts.get(position).getId();
+    }
+
+    /**
+     * @return the search boost of the contact at the position without creating it (if the list
+     * supports it).
+     */
+    static int getSearchBoost(List<ContactImpl> contacts, int position) {
+        return contacts instanceof ContactIdList ?
+               ((ContactIdList) contacts).getSearchBoost(position) :
+               contacts.get(position).getSearchBoost();
+    }
+
+    /**
+     * @return the sort key of the contact at the position without creating it (if the list
+     * supports it).
+     */
+    static String getSortKey(List<ContactImpl> contacts, int position, ContactSortOrder sortOrder) {
+        return contacts instanceof ContactIdList ?
+               ((ContactIdList) contacts).getSortKey(position, sortOrder) :
+               contacts.get(position).getSortKey(sortOrder);
+    }
+
+    /**
+     * @return the contact letter of the contact at the position without creating it (if the list
+     * supports it).
+     */
+    static char getContactLetter(List<ContactImpl> contacts, int position, ContactSortOrder sortOrder) {
+        return contacts instanceof ContactLetterList ?
+               ((ContactLetterList) contacts).getContactLetter(position, sortOrder) :
+               contacts.get(position).getContactLetter(sortOrder);
+    }
+
+    /**
+     * @return the contact at the position without having the list keep it if it hasn't been
+     * created yet (see ContactIdList.getUncachedContact).
+     */
+    static ContactImpl getUncachedContact(List<ContactImpl> contacts, int position, ContactFactory factory) {
+        return contacts instanceof ContactIdList ?
+               ((ContactIdList) contacts).getUncachedContact(position, factory) :
+               contacts.get(position);
+    }
+
+    /**
+     * @return True if the contact at the position is checked without creating it (if the list
+     * supports it).
+     */
+    static boolean isChecked(List<ContactImpl> contacts, int position) {
+        return contacts instanceof ContactCheckedList ?
+               ((ContactCheckedList) contacts).isChecked(position) :
+               contacts.get(position).isChecked();
+    }
+
+    /**
+     * Check or un-check the contact at the position without creating it (if the list supports it).
+     */
+    static void setChecked(List<ContactImpl> contacts, int position, boolean checked) {
+        if (contacts instanceof ContactCheckedList) {
+            ((ContactCheckedList) contacts).setChecked(position, checked);
+        }
+        else {
+            contacts.get(position).setChecked(checked, true);
+        }
+    }
+
+    /**
+     * The sorted contacts, ContactImpl instances are created when they are accessed.
+     */
+    class ContactList extends AbstractList<ContactImpl>
+            implements RandomAccess, ContactLetterList, ContactIdList, ContactCheckedList {
+
+        private final int[] mOrder;
+
+        private ContactList(int[] order) {
+            mOrder = order;
+        }
+
+        @Override
+        public ContactImpl get(int position) {
+            return getContact(mOrder[position]);
+        }
+
+        @Override
+        public int size() {
+            return mOrder.length;
+        }
+
+        @Override
+        public char getContactLetter(int position, ContactSortOrder sortOrder) {
+            return ContactStore.this.getContactLetter(mOrder[position], sortOrder);
+        }
+
+        @Override
+        public long getContactId(int position) {
+            return getId(mOrder[position]);
+        }
+
+        @Override
+        public int getSearchBoost(int position) {
+            return ContactStore.this.getSearchBoost(mOrder[position]);
+        }
+
+        @Override
+        public String getSortKey(int position, ContactSortOrder sortOrder) {
+            return ContactStore.this.getSortKey(mOrder[position], sortOrder);
+        }
+
+        @Override
+        public ContactImpl getUncachedContact(int position, ContactFactory factory) {
+            return ContactStore.this.getUncachedContact(mOrder[position], factory);
+        }
+
+        @Override
+        public boolean isChecked(int position) {
+            return ContactStore.this.isChecked(mOrder[position]);
+        }
+
+        @Override
+        public void setChecked(int position, boolean checked) {
+            ContactStore.this.setChecked(mOrder[position], checked);
+        }
+    }
+
+}
@@ -16,15 +16,16 @@
 
 package com.onegravity.contactpicker.core;
 
-import android.database.Cursor;
-import android.provider.ContactsContract;
-
 import com.onegravity.contactpicker.contact.Contact;
 import com.onegravity.contactpicker.group.Group;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * GroupImpl is the concrete Group implementation.
@@ -33,32 +34,92 @@ import java.util.Map;
  */
 class GroupImpl extends ContactElementImpl implements Group {
 
-    static GroupImpl fromCursor(Cursor cursor) {
-        long id = cursor.getLong(cursor.getColumnIndex(ContactsContract.Groups._ID));
-        String title = cursor.getString(cursor.getColumnIndex(ContactsContract.Groups.TITLE));
-        return new GroupImpl(id, title);
-    }
+    /*
+     * Set by the ContactProcessor thread when contacts and groups are joined.
+     * The membership is replaced, never modified, so the ui thread can safely read it.
+     * mOrdinal is the position of this group in the membership. Both are guarded by this.
+     */
+    transient private GroupMembership mMembership;
+    transient private int mOrdinal;
 
-    private Map<Long, Contact> mContacts = new HashMap<>();
+    /*
+     * The number of checked contacts of this group.
+     * Updated by the SelectionIndex whenever the checked state of a contact changes and recounted
+     * when a new membership is published (both under the SelectionIndex's lock). Guarded by this.
+     */
+    transient private int mNrOfCheckedContacts;
 
-    private GroupImpl(long id, String displayName) {
+    GroupImpl(long id, String displayName) {
         super(id, displayName);
     }
 
     @Override
     public Collection<Contact> getContacts() {
-        return mContacts.values();
+        GroupMembership membership;
+        int ordinal;
+        synchronized (this) {
+            membership = mMembership;
+            ordinal = mOrdinal;
+        }
+        return membership != null ? membership.getContacts(ordinal) : Collections.<Contact>emptyList();
     }
 
-    void addContact(Contact contact) {
-        long contactId = contact.getId();
-        if (!mContacts.keySet().contains(contactId)) {
-            mContacts.put(contact.getId(), contact);
+    /**
+     * Called by the SelectionIndex when a new membership is published.
+     */
+    synchronized void setMembership(GroupMembership membership, int ordinal, int nrOfCheckedContacts) {
+        mMembership = membership;
+        mOrdinal = ordinal;
+        mNrOfCheckedContacts = nrOfCheckedContacts;
+    }
+
+    /**
+     * Check or un-check all contacts of this group.
+     *
+     * @return True if the checked state of at least one contact has changed.
+     */
+    boolean setContactsChecked(boolean checked) {
+        GroupMembership membership;
+        int ordinal;
+        synchronized (this) {
+            membership = mMembership;
+            ordinal = mOrdinal;
         }
+        return membership != null && membership.setContactsChecked(ordinal, checked);
+    }
+
+    /**
+     * Called when a contact of this group has been checked or un-checked.
+     */
+    synchronized void onContactChecked(boolean checked) {
+        mNrOfCheckedContacts += checked ? 1 : -1;
+    }
+
+    /**
+     * @return True if at least one contact of this group is checked.
+     */
+    synchronized boolean hasCheckedContacts() {
+        return mNrOfCheckedContacts > 0;
+    }
+
+    synchronized boolean hasContacts() {
+        return mMembership != null && mMembership.getContactCount(mOrdinal) > 0;
+    }
+
+    /*
+     * The membership isn't serializable, the contacts are written as a list.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(getContacts()));
     }
 
-    boolean hasContacts() {
-        return mContacts.size() > 0;
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        List<ContactImpl> contacts = (List<ContactImpl>) in.readObject();
+        mMembership = GroupMembership.of(this, contacts);
+        mOrdinal = 0;
     }
 
 }
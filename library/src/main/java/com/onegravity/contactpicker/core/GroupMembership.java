@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.Contact;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The GroupMembership holds the relation between contacts and groups in compressed sparse row
+ * format, in both directions:
+ *
+ * - the members of group g are the contacts mContacts[mMembers[mGroupStart[g] ... mGroupStart[g+1]-1]]
+ * - the groups of contact c are the groups mGroups[mMemberOf[mContactStart[c] ... mContactStart[c+1]-1]]
+ *
+ * Contacts and groups are referenced by their ordinal (their position in mContacts and mGroups).
+ * The membership is built from the contact ids and their buffered group ids, so the contacts of a
+ * ContactStore are only created when a group's contacts are accessed.
+ * An instance is built once per join of contacts and groups and never modified afterwards, so it
+ * can be read by any thread. It's published through the SelectionIndex (see
+ * SelectionIndex.setMembership).
+ */
+class GroupMembership {
+
+    private final List<ContactImpl> mContacts;
+    private final long[] mContactIds;
+    private final GroupImpl[] mGroups;
+
+    /*
+     * The contact ids sorted for a binary search, mOrdinals[i] is the ordinal of mSortedIds[i].
+     */
+    private final long[] mSortedIds;
+    private final int[] mOrdinals;
+
+    private final int[] mGroupStart;
+    private final int[] mMembers;
+
+    private final int[] mContactStart;
+    private final int[] mMemberOf;
+
+    /**
+     * @param contacts the contacts (an immutable list), contactIds[c] is the id of contacts.get(c).
+     */
+    private GroupMembership(List<ContactImpl> contacts, long[] contactIds, GroupImpl[] groups,
+                            int[] groupStart, int[] members, int[] contactStart, int[] memberOf) {
+        mContacts = contacts;
+        mContactIds = contactIds;
+        mGroups = groups;
+        mGroupStart = groupStart;
+        mMembers = members;
+        mContactStart = contactStart;
+        mMemberOf = memberOf;
+
+        int nrOfContacts = contactIds.length;
+        mSortedIds = Arrays.copyOf(contactIds, nrOfContacts);
+        Arrays.sort(mSortedIds);
+        mOrdinals = new int[nrOfContacts];
+        for (int c = 0; c < nrOfContacts; c++) {
+            mOrdinals[Arrays.binarySearch(mSortedIds, contactIds[c])] = c;
+        }
+    }
+
+    /**
+     * @return the ordinal of a contact or -1 if it's not part of this membership.
+     */
+    private int getOrdinal(long contactId) {
+        int pos = Arrays.binarySearch(mSortedIds, contactId);
+        return pos >= 0 ? mOrdinals[pos] : -1;
+    }
+
+    /**
+     * Build the membership of the contacts and groups.
+     * The contacts' group ids are read in a single pass, the group -> contacts direction is the
+     * transposition of the resulting contact -> groups rows.
+     *
+     * @param contacts the contacts (an immutable list, see ContactStore.getContactId).
+     * @param groupIdsById the group ids by contact id.
+     */
+    static GroupMembership build(List<ContactImpl> contacts, Map<Long, LongArraySet> groupIdsById,
+                                 List<GroupImpl> groups) {
+        int nrOfGroups = groups.size();
+        GroupImpl[] groupArray = groups.toArray(new GroupImpl[nrOfGroups]);
+
+        // group ids sorted for a binary search, groupOrdinals[i] is the ordinal of groupIds[i]
+        long[] groupIds = new long[nrOfGroups];
+        for (int g = 0; g < nrOfGroups; g++) {
+            groupIds[g] = groupArray[g].getId();
+        }
+        Arrays.sort(groupIds);
+        int[] groupOrdinals = new int[nrOfGroups];
+        for (int g = 0; g < nrOfGroups; g++) {
+            groupOrdinals[Arrays.binarySearch(groupIds, groupArray[g].getId())] = g;
+        }
+
+        // contact -> groups
+        int nrOfContacts = contacts.size();
+        long[] contactIds = new long[nrOfContacts];
+        int[] contactStart = new int[nrOfContacts + 1];
+        int[] memberOf = new int[Math.max(16, nrOfContacts)];
+        int[] groupSize = new int[nrOfGroups];
+        int nrOfEdges = 0;
+        for (int c = 0; c < nrOfContacts; c++) {
+            long contactId = ContactStore.getContactId(contacts, c);
+            contactIds[c] = contactId;
+            contactStart[c] = nrOfEdges;
+            LongArraySet contactGroupIds = groupIdsById.get(contactId);
+            if (contactGroupIds == null) continue;
+
+            for (Long groupId : contactGroupIds) {
+                int pos = Arrays.binarySearch(groupIds, groupId);
+                if (pos >= 0) {
+                    if (nrOfEdges == memberOf.length) {
+                        memberOf = Arrays.copyOf(memberOf, nrOfEdges * 2);
+                    }
+                    int g = groupOrdinals[pos];
+                    memberOf[nrOfEdges++] = g;
+                    groupSize[g]++;
+                }
+            }
+        }
+        contactStart[nrOfContacts] = nrOfEdges;
+
+        // group -> contacts (the contact ordinals of each group are ascending)
+        int[] groupStart = new int[nrOfGroups + 1];
+        for (int g = 0; g < nrOfGroups; g++) {
+            groupStart[g + 1] = groupStart[g] + groupSize[g];
+        }
+        int[] next = Arrays.copyOf(groupStart, nrOfGroups);
+        int[] members = new int[nrOfEdges];
+        for (int c = 0; c < nrOfContacts; c++) {
+            for (int e = contactStart[c], end = contactStart[c + 1]; e < end; e++) {
+                members[next[memberOf[e]]++] = c;
+            }
+        }
+
+        return new GroupMembership(contacts, contactIds, groupArray, groupStart, members,
+                                   contactStart, Arrays.copyOf(memberOf, nrOfEdges));
+    }
+
+    /**
+     * A membership of a single group with the given contacts (e.g. for a deserialized group).
+     */
+    static GroupMembership of(GroupImpl group, List<ContactImpl> contacts) {
+        int nrOfContacts = contacts.size();
+        long[] contactIds = new long[nrOfContacts];
+        int[] members = new int[nrOfContacts];
+        int[] contactStart = new int[nrOfContacts + 1];
+        for (int c = 0; c < nrOfContacts; c++) {
+            contactIds[c] = contacts.get(c).getId();
+            members[c] = c;
+            contactStart[c + 1] = c + 1;
+        }
+        return new GroupMembership(contacts, contactIds, new GroupImpl[] {group},
+                                   new int[] {0, nrOfContacts}, members, contactStart, new int[nrOfContacts]);
+    }
+
+    /**
+     * @return True if both memberships relate the same groups to the same contacts (by id,
+     * regardless of the contacts' order or whether they are the same instances).
+     */
+    boolean hasSameMembers(GroupMembership other) {
+        if (other == null || ! Arrays.equals(mGroups, other.mGroups) ||
+            ! Arrays.equals(mGroupStart, other.mGroupStart)) {
+            return false;
+        }
+        return Arrays.equals(getSortedMemberIds(), other.getSortedMemberIds());
+    }
+
+    /**
+     * @return the ids of the group members, grouped like mMembers but sorted within each group.
+     */
+    private long[] getSortedMemberIds() {
+        long[] ids = new long[mMembers.length];
+        for (int i = 0; i < mMembers.length; i++) {
+            ids[i] = mContactIds[mMembers[i]];
+        }
+        for (int g = 0; g < mGroups.length; g++) {
+            Arrays.sort(ids, mGroupStart[g], mGroupStart[g + 1]);
+        }
+        return ids;
+    }
+
+    int getContactCount(int group) {
+        return mGroupStart[group + 1] - mGroupStart[group];
+    }
+
+    int countCheckedContacts(int group, SelectionIndex selectionIndex) {
+        int count = 0;
+        for (int i = mGroupStart[group], end = mGroupStart[group + 1]; i < end; i++) {
+            count += selectionIndex.contains(mContactIds[mMembers[i]]) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Check or un-check all contacts of a group.
+     *
+     * @return True if the checked state of at least one contact has changed.
+     */
+    boolean setContactsChecked(int group, boolean checked) {
+        boolean hasChanged = false;
+        for (int i = mGroupStart[group], end = mGroupStart[group + 1]; i < end; i++) {
+            // without creating the contacts of a ContactStore
+            int contact = mMembers[i];
+            if (ContactStore.isChecked(mContacts, contact) != checked) {
+                ContactStore.setChecked(mContacts, contact, checked);
+                hasChanged = true;
+            }
+        }
+        return hasChanged;
+    }
+
+    /**
+     * Let the groups of a contact know that it has been checked or un-checked.
+     */
+    void onContactChecked(long contactId, boolean checked) {
+        int contact = getOrdinal(contactId);
+        if (contact < 0) return;
+
+        for (int i = mContactStart[contact], end = mContactStart[contact + 1]; i < end; i++) {
+            mGroups[mMemberOf[i]].onContactChecked(checked);
+        }
+    }
+
+    /**
+     * @return a read-only view of the contacts of a group.
+     */
+    List<Contact> getContacts(final int group) {
+        final int start = mGroupStart[group];
+        final int size = mGroupStart[group + 1] - start;
+        return new RandomAccessList<Contact>() {
+            @Override
+            public Contact get(int location) {
+                checkIndex(location, size);
+                return mContacts.get(mMembers[start + location]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a read-only view of the groups of a contact.
+     */
+    List<GroupImpl> getGroups(long contactId) {
+        int contact = getOrdinal(contactId);
+        if (contact < 0) return Collections.emptyList();
+
+        final int start = mContactStart[contact];
+        final int size = mContactStart[contact + 1] - start;
+        return new RandomAccessList<GroupImpl>() {
+            @Override
+            public GroupImpl get(int location) {
+                checkIndex(location, size);
+                return mGroups[mMemberOf[start + location]];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static abstract class RandomAccessList<T> extends AbstractList<T> implements RandomAccess {
+        static void checkIndex(int location, int size) {
+            if (location < 0 || location >= size) {
+                throw new IndexOutOfBoundsException("Index: " + location + ", Size: " + size);
+            }
+        }
+    }
+
+}
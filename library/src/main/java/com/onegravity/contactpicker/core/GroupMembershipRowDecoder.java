@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
+
+/**
+ * Reads the contact and group id from the GroupMembership rows of a ContactsContract.Data cursor.
+ *
+ * The column indexes are resolved once when the decoder is created, so a decoder instance must
+ * only be used with the cursor it was created for.
+ */
+class GroupMembershipRowDecoder {
+
+    private final int mContactIdIndex;
+    private final int mGroupIdIndex;
+
+    GroupMembershipRowDecoder(Cursor cursor) {
+        mContactIdIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+        mGroupIdIndex = cursor.getColumnIndex(GroupMembership.GROUP_ROW_ID);
+    }
+
+    long getContactId(Cursor cursor) {
+        return cursor.getLong(mContactIdIndex);
+    }
+
+    long getGroupId(Cursor cursor) {
+        return cursor.getLong(mGroupIdIndex);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.ContactCheckedList;
+import com.onegravity.contactpicker.contact.ContactIndexedList;
+import com.onegravity.contactpicker.contact.ContactLetterList;
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view of a sorted contact list together with its alphabetic index.
+ */
+class IndexedContactList extends AbstractList<ContactImpl>
+        implements RandomAccess, ContactLetterList, ContactIndexedList, ContactIdList, ContactCheckedList {
+
+    private final List<ContactImpl> mContacts;
+    private final ContactIndex mIndex;
+    private final ContactSortOrder mSortOrder;
+
+    private IndexedContactList(List<ContactImpl> contacts, ContactIndex index, ContactSortOrder sortOrder) {
+        mContacts = contacts;
+        mIndex = index;
+        mSortOrder = sortOrder;
+    }
+
+    /**
+     * @return the contacts with the index or the contacts themselves if the index doesn't match.
+     */
+    static List<ContactImpl> wrap(List<ContactImpl> contacts, ContactIndex index, ContactSortOrder sortOrder) {
+        return index != null && index.fits(contacts.size()) ?
+               new IndexedContactList(contacts, index, sortOrder) :
+               contacts;
+    }
+
+    /**
+     * @return the index of the contacts if they have one, Null otherwise.
+     */
+    static ContactIndex getIndex(List<ContactImpl> contacts) {
+        return contacts instanceof IndexedContactList ? ((IndexedContactList) contacts).mIndex : null;
+    }
+
+    @Override
+    public ContactImpl get(int position) {
+        return mContacts.get(position);
+    }
+
+    @Override
+    public int size() {
+        return mContacts.size();
+    }
+
+    @Override
+    public char getContactLetter(int position, ContactSortOrder sortOrder) {
+        return ContactStore.getContactLetter(mContacts, position, sortOrder);
+    }
+
+    @Override
+    public long getContactId(int position) {
+        return ContactStore.getContactId(mContacts, position);
+    }
+
+    @Override
+    public int getSearchBoost(int position) {
+        return ContactStore.getSearchBoost(mContacts, position);
+    }
+
+    @Override
+    public String getSortKey(int position, ContactSortOrder sortOrder) {
+        return ContactStore.getSortKey(mContacts, position, sortOrder);
+    }
+
+    @Override
+    public ContactImpl getUncachedContact(int position, ContactStore.ContactFactory factory) {
+        return ContactStore.getUncachedContact(mContacts, position, factory);
+    }
+
+    @Override
+    public boolean isChecked(int position) {
+        return ContactStore.isChecked(mContacts, position);
+    }
+
+    @Override
+    public void setChecked(int position, boolean checked) {
+        ContactStore.setChecked(mContacts, position, checked);
+    }
+
+    @Override
+    public String[] getSectionTitles(ContactSortOrder sortOrder) {
+        return sortOrder == mSortOrder ? mIndex.getTitles() : null;
+    }
+
+    @Override
+    public int[] getSectionCounts(ContactSortOrder sortOrder) {
+        return sortOrder == mSortOrder ? mIndex.getCounts() : null;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable Set of longs (e.g. the group ids of a contact) backed by a sorted long[].
+ *
+ * Compared to a HashSet<Long> this saves the hash table, the entry objects and the boxed values.
+ * Empty sets share the EMPTY instance.
+ */
+class LongArraySet extends AbstractSet<Long> implements Serializable {
+
+    static final LongArraySet EMPTY = new LongArraySet(new long[0]);
+
+    private final long[] mValues;
+
+    private LongArraySet(long[] values) {
+        mValues = values;
+    }
+
+    /**
+     * @param values the values, the array is sorted and must not be modified afterwards.
+     */
+    static LongArraySet of(long[] values) {
+        if (values == null || values.length == 0) return EMPTY;
+
+        Arrays.sort(values);
+        return new LongArraySet(values);
+    }
+
+    static LongArraySet of(Collection<Long> values) {
+        if (values == null || values.isEmpty()) return EMPTY;
+
+        long[] array = new long[values.size()];
+        int i = 0;
+        for (Long value : values) {
+            array[i++] = value;
+        }
+        return of(array);
+    }
+
+    boolean contains(long value) {
+        return Arrays.binarySearch(mValues, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Long && contains(((Long) value).longValue());
+    }
+
+    @Override
+    public int size() {
+        return mValues.length;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private int mPos;
+
+            @Override
+            public boolean hasNext() {
+                return mPos < mValues.length;
+            }
+
+            @Override
+            public Long next() {
+                if (mPos >= mValues.length) throw new NoSuchElementException();
+
+                return mValues[mPos++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
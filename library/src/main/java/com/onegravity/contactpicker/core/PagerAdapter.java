@@ -20,6 +20,7 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentStatePagerAdapter;
 
+import com.onegravity.contactpicker.SearchMode;
 import com.onegravity.contactpicker.contact.ContactDescription;
 import com.onegravity.contactpicker.contact.ContactFragment;
 import com.onegravity.contactpicker.contact.ContactSortOrder;
@@ -34,9 +35,12 @@ public class PagerAdapter extends FragmentStatePagerAdapter {
     final private ContactPictureType mBadgeType;
     final private ContactDescription mDescription;
     final private int mDescriptionType;
+    final private boolean mSearchDetails;
+    final private SearchMode mSearchMode;
 
     public PagerAdapter(FragmentManager fm, int numOfTabs, ContactSortOrder sortOrder,
-                        ContactPictureType badgeType, ContactDescription description, int descriptionType) {
+                        ContactPictureType badgeType, ContactDescription description, int descriptionType,
+                        boolean searchDetails, SearchMode searchMode) {
         super(fm);
 
         mNumOfTabs = numOfTabs;
@@ -44,13 +48,15 @@ public class PagerAdapter extends FragmentStatePagerAdapter {
         mBadgeType = badgeType;
         mDescription = description;
         mDescriptionType = descriptionType;
+        mSearchDetails = searchDetails;
+        mSearchMode = searchMode;
     }
 
     @Override
     public Fragment getItem(int position) {
         return switch (position) {
             case 0 -> ContactFragment.newInstance(
-                    mSortOrder, mBadgeType, mDescription, mDescriptionType
+                    mSortOrder, mBadgeType, mDescription, mDescriptionType, mSearchDetails, mSearchMode
             );
             case 1 -> GroupFragment.newInstance();
             default -> null;
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The SelectionIndex keeps track of the ids of all checked contacts.
+ *
+ * It's updated by ContactElementImpl.setChecked whenever the checked state of a contact changes
+ * (including the changes that don't notify the OnContactCheckedListeners), so the number of
+ * selected contacts is always known without iterating over all contacts.
+ * It's also where the contacts read their checked state from, so different ContactImpl instances
+ * of the same contact (e.g. before and after it was updated) can't disagree.
+ *
+ * The ids are stored in an open addressing hash set of primitive longs (linear probing).
+ * The ui thread and the ContactProcessor thread both change the checked state of contacts, hence
+ * all methods are synchronized.
+ *
+ * The groups' checked contact counters are updated under the same lock, both when a contact is
+ * checked or un-checked and when they are recounted for a new GroupMembership. A contact checked
+ * while the membership is replaced is therefore counted exactly once.
+ */
+class SelectionIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /*
+     * Marks an empty slot. A (hypothetical) id with that value is tracked separately.
+     */
+    private static final long EMPTY = 0;
+
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private int mSize;
+    private boolean mContainsEmpty;
+
+    /*
+     * The membership of the contacts in the groups (Null until contacts and groups are joined).
+     */
+    private GroupMembership mMembership;
+
+    /**
+     * Add or remove a contact id.
+     *
+     * @return True if the contact was checked before.
+     */
+    synchronized boolean setChecked(long id, boolean isChecked) {
+        boolean wasChecked = isChecked ? ! add(id) : remove(id);
+        if (wasChecked != isChecked && mMembership != null) {
+            mMembership.onContactChecked(id, isChecked);
+        }
+        return wasChecked;
+    }
+
+    /**
+     * Publish a new membership: the groups get it together with their recounted number of checked
+     * contacts (see class comment).
+     */
+    synchronized void setMembership(GroupMembership membership, List<GroupImpl> groups) {
+        mMembership = membership;
+        for (int g = 0, size = groups.size(); g < size; g++) {
+            groups.get(g).setMembership(membership, g, membership.countCheckedContacts(g, this));
+        }
+    }
+
+    synchronized GroupMembership getMembership() {
+        return mMembership;
+    }
+
+    synchronized boolean contains(long id) {
+        if (id == EMPTY) return mContainsEmpty;
+
+        int mask = mIds.length - 1;
+        for (int i = hash(id) & mask; mIds[i] != EMPTY; i = (i + 1) & mask) {
+            if (mIds[i] == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of checked contacts.
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Add contact ids (e.g. the preselected ones).
+     */
+    synchronized void addAll(Collection<Long> ids) {
+        if (ids == null) return;
+
+        for (Long id : ids) {
+            if (id != null) add(id);
+        }
+    }
+
+    /**
+     * Remove the ids of all contacts that don't exist (any more), in one step so no concurrent
+     * change of the checked state gets lost.
+     *
+     * @param existingIds the ids of all contacts (in any order, the array is sorted).
+     */
+    synchronized void retainAll(long[] existingIds) {
+        Arrays.sort(existingIds);
+        for (long id : getIds()) {
+            if (Arrays.binarySearch(existingIds, id) < 0) {
+                setChecked(id, false);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of all ids (e.g. to save them in onSaveInstanceState).
+     */
+    synchronized HashSet<Long> getIds() {
+        HashSet<Long> ids = new HashSet<>(mSize * 2);
+        if (mContainsEmpty) ids.add(EMPTY);
+        for (long id : mIds) {
+            if (id != EMPTY) ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * @return True if the id was added, False if it was there already.
+     */
+    private boolean add(long id) {
+        if (id == EMPTY) {
+            if (mContainsEmpty) return false;
+
+            mContainsEmpty = true;
+            mSize++;
+            return true;
+        }
+
+        int mask = mIds.length - 1;
+        int i = hash(id) & mask;
+        while (mIds[i] != EMPTY) {
+            if (mIds[i] == id) return false;
+            i = (i + 1) & mask;
+        }
+        mIds[i] = id;
+        mSize++;
+
+        // keep the load factor below 0.5
+        if (mSize * 2 > mIds.length) {
+            rehash(mIds.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the id was removed, False if it wasn't there.
+     */
+    private boolean remove(long id) {
+        if (id == EMPTY) {
+            if (! mContainsEmpty) return false;
+
+            mContainsEmpty = false;
+            mSize--;
+            return true;
+        }
+
+        int mask = mIds.length - 1;
+        int i = hash(id) & mask;
+        while (mIds[i] != id) {
+            if (mIds[i] == EMPTY) return false;
+            i = (i + 1) & mask;
+        }
+        mIds[i] = EMPTY;
+        mSize--;
+
+        // shift back the following entries of the cluster so lookups don't stop at the gap
+        int gap = i;
+        for (int j = (i + 1) & mask; mIds[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(mIds[j]) & mask;
+            // move the entry if its home slot isn't cyclically between the gap and its position
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                mIds[gap] = mIds[j];
+                mIds[j] = EMPTY;
+                gap = j;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldIds = mIds;
+        mIds = new long[capacity];
+        int mask = capacity - 1;
+        for (long id : oldIds) {
+            if (id != EMPTY) {
+                int i = hash(id) & mask;
+                while (mIds[i] != EMPTY) i = (i + 1) & mask;
+                mIds[i] = id;
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
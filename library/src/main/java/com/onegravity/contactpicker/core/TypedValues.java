@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker.core;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable Map of types (e.g. ContactsContract.CommonDataKinds.Email.TYPE_HOME) to values
+ * (e.g. email addresses).
+ *
+ * A contact has only a handful of emails, phone numbers or addresses, so instead of a HashMap
+ * (with an entry object and a boxed Integer per value) the types and values are kept in two small
+ * arrays sorted by type. Contacts without values share the EMPTY instance.
+ */
+class TypedValues extends AbstractMap<Integer, String> implements Serializable {
+
+    static final TypedValues EMPTY = new TypedValues(new int[0], new String[0]);
+
+    private final int[] mTypes;
+    private final String[] mValues;
+
+    private TypedValues(int[] types, String[] values) {
+        mTypes = types;
+        mValues = values;
+    }
+
+    /**
+     * @return a copy of this instance with the value for the given type added or replaced.
+     */
+    TypedValues with(int type, String value) {
+        int pos = Arrays.binarySearch(mTypes, type);
+        if (pos >= 0) {
+            String[] values = mValues.clone();
+            values[pos] = value;
+            return new TypedValues(mTypes, values);
+        }
+
+        pos = -pos - 1;
+        int size = mTypes.length;
+        int[] types = new int[size + 1];
+        String[] values = new String[size + 1];
+        System.arraycopy(mTypes, 0, types, 0, pos);
+        System.arraycopy(mValues, 0, values, 0, pos);
+        types[pos] = type;
+        values[pos] = value;
+        System.arraycopy(mTypes, pos, types, pos + 1, size - pos);
+        System.arraycopy(mValues, pos, values, pos + 1, size - pos);
+        return new TypedValues(types, values);
+    }
+
+    @Override
+    public int size() {
+        return mTypes.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && Arrays.binarySearch(mTypes, (Integer) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (! (key instanceof Integer)) return null;
+
+        int pos = Arrays.binarySearch(mTypes, (Integer) key);
+        return pos >= 0 ? mValues[pos] : null;
+    }
+
+    @Override
+    public Set<Entry<Integer, String>> entrySet() {
+        return new AbstractSet<Entry<Integer, String>>() {
+            @Override
+            public Iterator<Entry<Integer, String>> iterator() {
+                return new Iterator<Entry<Integer, String>>() {
+                    private int mPos;
+
+                    @Override
+                    public boolean hasNext() {
+                        return mPos < mTypes.length;
+                    }
+
+                    @Override
+                    public Entry<Integer, String> next() {
+                        if (mPos >= mTypes.length) throw new NoSuchElementException();
+
+                        int pos = mPos++;
+                        return new SimpleImmutableEntry<>(mTypes[pos], mValues[pos]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return mTypes.length;
+            }
+        };
+    }
+
+}
@@ -31,7 +31,7 @@ import org.greenrobot.eventbus.ThreadMode;
 import java.util.ArrayList;
 import java.util.List;
 
-public class GroupFragment extends BaseFragment {
+public class GroupFragment extends BaseFragment<Group> {
 
     /**
      * The list of all visible groups.
@@ -64,8 +64,10 @@ public class GroupFragment extends BaseFragment {
         EventBus.getDefault().removeStickyEvent(event);
 
         mGroups = event.getGroups();
-        mFilteredGroups = mGroups;
-        mAdapter.setData(mFilteredGroups);
+        if (! refilter()) {
+            mFilteredGroups = mGroups;
+            mAdapter.setData(mFilteredGroups);
+        }
 
         updateEmptyViewVisibility(mGroups);
     }
@@ -95,22 +97,13 @@ public class GroupFragment extends BaseFragment {
     }
 
     @Override
-    protected void performFiltering(String[] queryStrings) {
-        if (mGroups == null) return;
-
-        if (queryStrings == null || queryStrings.length == 0) {
-            mFilteredGroups = mGroups;
-        }
-        else {
-            List<Group> filteredElements = new ArrayList<>();
-            for (Group group : mGroups) {
-                if (group.matchesQuery(queryStrings)) {
-                    filteredElements.add(group);
-                }
-            }
-            mFilteredGroups = filteredElements;
-        }
+    protected List<? extends Group> getElements() {
+        return mGroups;
+    }
 
+    @Override
+    protected void onFilteringDone(List<? extends Group> filteredElements) {
+        mFilteredGroups = filteredElements;
         mAdapter.setData(mFilteredGroups);
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.onegravity.contactpicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class PrefixIndexTest {
+
+    /*
+     * Latin keys mixed with keys starting with CJK characters (>= 0x8000).
+     */
+    private static final String[] KEYS = {
+            "anna smith",
+            "\u9648 wei",
+            "bob jones",
+            "\u9ec4 li",
+            "carl zed",
+            "dora ann"
+    };
+
+    private final PrefixIndex mIndex = new PrefixIndex(KEYS);
+
+    @Test
+    public void lookupNonLatinCharacters() {
+        assertArrayEquals(new int[] {1}, mIndex.lookup("\u9648"));
+        assertArrayEquals(new int[] {3}, mIndex.lookup("\u9ec4"));
+        assertArrayEquals(new int[] {1}, mIndex.lookup("\u9648w"));
+        assertArrayEquals(new int[] {1}, mIndex.lookup("wei"));
+    }
+
+    @Test
+    public void lookupLetters() {
+        assertArrayEquals(new int[] {0, 5}, mIndex.lookup("ann"));
+        assertArrayEquals(new int[] {0}, mIndex.lookup("as"));
+        assertArrayEquals(new int[] {4}, mIndex.lookup("zed"));
+        assertArrayEquals(new int[0], mIndex.lookup("x"));
+    }
+
+    @Test
+    public void lookupKeypadDigits() {
+        // 2 = abc
+        assertArrayEquals(new int[] {0, 2, 4, 5}, mIndex.lookup("2"));
+        // 266 = ann
+        assertArrayEquals(new int[] {0, 5}, mIndex.lookup("266"));
+        // 934 = wei
+        assertArrayEquals(new int[] {1}, mIndex.lookup("934"));
+        // 54 = li
+        assertArrayEquals(new int[] {3}, mIndex.lookup("54"));
+    }
+
+}
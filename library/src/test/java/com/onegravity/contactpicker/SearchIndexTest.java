@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.onegravity.contactpicker;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SearchIndexTest {
+
+    private static final String[] KEYS = {
+            "anna smith",
+            "joanna",
+            "hannah ann",
+            "annette",
+            "bob\n555 1234"
+    };
+
+    private static final List<ContactElement> ELEMENTS = Collections.nCopies(KEYS.length, null);
+
+    private static int[] search(SearchIndex<ContactElement> index, String... queryStrings) {
+        return getPositions(index.search(queryStrings, null));
+    }
+
+    private static int[] getPositions(SearchIndex<ContactElement>.Result result) {
+        int[] positions = new int[result.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = result.getElementPosition(i);
+        }
+        return positions;
+    }
+
+    @Test
+    public void searchName() {
+        SearchIndex<ContactElement> index = new SearchIndex<>(ELEMENTS, KEYS, null, SearchMode.NAME);
+
+        // list order
+        assertArrayEquals(new int[] {0, 1, 2, 3}, search(index, "ann"));
+        assertArrayEquals(new int[] {0, 2}, search(index, "ann", "h"));
+        assertArrayEquals(new int[] {4}, search(index, "555"));
+        // query strings never match across the parts of a key
+        assertArrayEquals(new int[0], search(index, "bob 555"));
+
+        // an extended query only searches the previous result
+        SearchIndex<ContactElement>.Result previous = index.search(new String[] {"ann"}, null);
+        assertArrayEquals(new int[] {0, 1, 2}, getPositions(index.search(new String[] {"anna"}, previous)));
+    }
+
+    @Test
+    public void searchRanked() {
+        SearchIndex<ContactElement> index = new SearchIndex<>(ELEMENTS, KEYS, null, SearchMode.RANKED);
+
+        // prefix > word start > substring, equal matches in list order
+        assertArrayEquals(new int[] {0, 3, 2, 1}, search(index, "ann"));
+        // typo
+        assertArrayEquals(new int[] {0}, search(index, "smtih"));
+    }
+
+    @Test
+    public void searchRankedBoosts() {
+        int[] boosts = {0, 0xffff, 0, 100, 0};
+        SearchIndex<ContactElement> index = new SearchIndex<>(ELEMENTS, KEYS, boosts, SearchMode.RANKED);
+
+        // the boost only ranks equally good matches
+        assertArrayEquals(new int[] {3, 0, 2, 1}, search(index, "ann"));
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.onegravity.contactpicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class TrigramIndexTest {
+
+    private static final String[] KEYS = {
+            "anna smith",
+            "hannah",
+            "bob jones",
+            "jo",
+            "",
+            "abc bcd",
+            "aaaa"
+    };
+
+    private final TrigramIndex mIndex = new TrigramIndex(KEYS);
+
+    @Test
+    public void lookupTrigrams() {
+        assertArrayEquals(new int[] {0, 1}, mIndex.lookup("ann"));
+        assertArrayEquals(new int[] {0, 1}, mIndex.lookup("anna"));
+        assertArrayEquals(new int[] {2}, mIndex.lookup("b j"));
+        assertArrayEquals(new int[] {2}, mIndex.lookup("jones"));
+        assertArrayEquals(new int[0], mIndex.lookup("xyz"));
+        assertArrayEquals(new int[0], mIndex.lookup("annx"));
+    }
+
+    @Test
+    public void lookupSuperset() {
+        // both trigrams are in the key but "abcd" isn't
+        assertArrayEquals(new int[] {5}, mIndex.lookup("abcd"));
+    }
+
+    @Test
+    public void lookupRepeatedTrigram() {
+        // "aaa" occurs twice in "aaaa" but the key is listed once
+        assertArrayEquals(new int[] {6}, mIndex.lookup("aaa"));
+        assertArrayEquals(new int[] {6}, mIndex.lookup("aaaa"));
+    }
+
+    @Test
+    public void lookupShortQuery() {
+        assertNull(mIndex.lookup("jo"));
+        assertNull(mIndex.lookup(""));
+    }
+
+}
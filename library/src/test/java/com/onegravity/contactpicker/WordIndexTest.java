@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.onegravity.contactpicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WordIndexTest {
+
+    private static final String[] KEYS = {
+            "john smith",
+            "jon smythe",
+            "johnson",
+            "mary\n0123",
+            "smith smith"
+    };
+
+    private final WordIndex mIndex = new WordIndex(KEYS);
+
+    @Test
+    public void lookupTypos() {
+        // transposition (john, johnson) and missing character (jon)
+        assertArrayEquals(new int[] {0, 1, 2}, mIndex.lookupFuzzy("jonh", 1));
+        assertArrayEquals(new int[] {3}, mIndex.lookupFuzzy("mray", 1));
+        assertArrayEquals(new int[] {0, 1, 4}, mIndex.lookupFuzzy("smith", 1));
+        assertArrayEquals(new int[0], mIndex.lookupFuzzy("xavier", 1));
+    }
+
+    @Test
+    public void lookupExactWords() {
+        assertArrayEquals(new int[] {0, 4}, mIndex.lookupFuzzy("smith", 0));
+        // the parts of a key are separated by a line feed
+        assertArrayEquals(new int[] {3}, mIndex.lookupFuzzy("0123", 0));
+    }
+
+    @Test
+    public void prefixDistance() {
+        int[] rows = new int[64];
+        assertEquals(0, WordIndex.getPrefixDistance("john", "johnson", 2, rows));
+        assertEquals(1, WordIndex.getPrefixDistance("jonh", "johnson", 2, rows));
+        assertEquals(1, WordIndex.getPrefixDistance("jhon", "john", 2, rows));
+        assertEquals(2, WordIndex.getPrefixDistance("jxhx", "john", 2, rows));
+    }
+
+}
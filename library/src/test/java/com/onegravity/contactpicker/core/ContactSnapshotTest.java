@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.ContactSortOrder;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContactSnapshotTest {
+
+    private static final String KEY = "all contacts";
+
+    private static File newFile() throws IOException {
+        File file = File.createTempFile("contacts", ".snapshot");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static ContactImpl newContact(long id, String name, boolean starred, long... groupIds) {
+        ContactImpl contact = new ContactImpl(id, "key" + id, name, name, "Smith", null,
+                                              "sort " + name, "smith " + name);
+        contact.setUsage(starred, (int) id * 10);
+
+        ContactDetails details = new ContactDetails();
+        details.setFirstName(name);
+        details.setLastName("Smith");
+        details.setEmail(1, name.toLowerCase() + "@example.com");
+        details.setPhone(2, "555 " + id);
+        contact.setDetails(details);
+        contact.setGroupIds(LongArraySet.of(groupIds));
+        return contact;
+    }
+
+    private static void writeHeader(File file, int version, int nrOfContacts) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(version);
+        out.writeInt(KEY.length());
+        out.writeBytes(KEY);
+        out.writeInt(nrOfContacts);
+        out.close();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ContactSnapshot snapshot = new ContactSnapshot(newFile(), KEY);
+        snapshot.write(Arrays.asList(newContact(7, "Anna", true, 10, 20),
+                                     newContact(3, "Jos\u00e9", false)));
+
+        List<ContactImpl> contacts = snapshot.read();
+        assertNotNull(contacts);
+        assertEquals(2, contacts.size());
+
+        ContactImpl anna = contacts.get(0);
+        assertEquals(7, anna.getId());
+        assertEquals("key7", anna.getLookupKey());
+        assertEquals("Anna", anna.getDisplayName());
+        assertEquals("Smith", anna.getLastName());
+        assertNull(anna.getPhotoUri());
+        assertEquals("sort Anna", anna.getSortKey(ContactSortOrder.AUTOMATIC));
+        assertEquals("smith Anna", anna.getSortKey(ContactSortOrder.LAST_NAME));
+        assertTrue(anna.isStarred());
+        assertEquals(70, anna.getTimesContacted());
+        assertEquals("anna@example.com", anna.getMapEmail().get(1));
+        assertEquals("555 7", anna.getMapPhone().get(2));
+        assertTrue(anna.getMapAddress().isEmpty());
+        assertEquals(2, anna.getGroupIds().size());
+        assertTrue(anna.getGroupIds().contains(10L));
+        assertTrue(anna.getGroupIds().contains(20L));
+
+        ContactImpl jose = contacts.get(1);
+        assertEquals(3, jose.getId());
+        assertEquals("Jos\u00e9", jose.getDisplayName());
+        assertFalse(jose.isStarred());
+        assertTrue(jose.getGroupIds().isEmpty());
+    }
+
+    @Test
+    public void otherKey() throws IOException {
+        File file = newFile();
+        new ContactSnapshot(file, KEY).write(Arrays.asList(newContact(1, "Anna", false)));
+
+        assertNull(new ContactSnapshot(file, "other contacts").read());
+    }
+
+    @Test
+    public void missingFile() throws IOException {
+        File file = newFile();
+        assertTrue(file.delete());
+
+        assertNull(new ContactSnapshot(file, KEY).read());
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        File file = newFile();
+        new ContactSnapshot(file, KEY).write(Arrays.asList(newContact(1, "Anna", false, 10)));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        assertNull(new ContactSnapshot(file, KEY).read());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void countTooLarge() throws IOException {
+        // a count the file can't hold is rejected before anything is allocated
+        File file = newFile();
+        writeHeader(file, ContactSnapshot.VERSION, Integer.MAX_VALUE);
+
+        assertNull(new ContactSnapshot(file, KEY).read());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void negativeCount() throws IOException {
+        File file = newFile();
+        writeHeader(file, ContactSnapshot.VERSION, -1);
+
+        assertNull(new ContactSnapshot(file, KEY).read());
+        assertFalse(file.exists());
+    }
+
+}
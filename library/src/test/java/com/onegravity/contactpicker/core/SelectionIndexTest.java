@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015-2023 Emanuel Moecklin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.onegravity.contactpicker.core;
+
+import com.onegravity.contactpicker.contact.Contact;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionIndexTest {
+
+    private final SelectionIndex mIndex = new SelectionIndex();
+
+    /*
+     * Group A has the contacts 1 and 2, group B the contacts 2 and 3.
+     */
+    private final GroupImpl mGroupA = new GroupImpl(10, "A");
+    private final GroupImpl mGroupB = new GroupImpl(20, "B");
+    private final List<GroupImpl> mGroups = Arrays.asList(mGroupA, mGroupB);
+    private final List<ContactImpl> mContacts = Arrays.asList(newContact(1), newContact(2), newContact(3));
+    private final Map<Long, LongArraySet> mGroupIdsById = new HashMap<>();
+
+    public SelectionIndexTest() {
+        mGroupIdsById.put(1L, LongArraySet.of(new long[] {10}));
+        mGroupIdsById.put(2L, LongArraySet.of(new long[] {10, 20}));
+        mGroupIdsById.put(3L, LongArraySet.of(new long[] {20}));
+    }
+
+    private ContactImpl newContact(long id) {
+        ContactImpl contact = new ContactImpl(id, "key" + id, "Contact " + id, "Contact", Long.toString(id),
+                                              null, null, null);
+        contact.setSelectionIndex(mIndex);
+        return contact;
+    }
+
+    private GroupMembership publishMembership(List<ContactImpl> contacts) {
+        GroupMembership membership = GroupMembership.build(contacts, mGroupIdsById, mGroups);
+        mIndex.setMembership(membership, mGroups);
+        return membership;
+    }
+
+    private static long[] getIds(List<? extends Contact> contacts) {
+        long[] ids = new long[contacts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = contacts.get(i).getId();
+        }
+        return ids;
+    }
+
+    @Test
+    public void checkAndUncheck() {
+        assertFalse(mIndex.setChecked(5, true));
+        assertTrue(mIndex.setChecked(5, true));
+        assertTrue(mIndex.contains(5));
+        assertEquals(1, mIndex.size());
+
+        // the id of the empty slots
+        assertFalse(mIndex.setChecked(0, true));
+        assertTrue(mIndex.contains(0));
+        assertEquals(2, mIndex.size());
+
+        assertTrue(mIndex.setChecked(5, false));
+        assertFalse(mIndex.setChecked(5, false));
+        assertFalse(mIndex.contains(5));
+        assertEquals(1, mIndex.size());
+    }
+
+    @Test
+    public void growAndShrink() {
+        for (long id = 1; id <= 1000; id++) {
+            mIndex.setChecked(id * 31, true);
+        }
+        assertEquals(1000, mIndex.size());
+
+        for (long id = 1; id <= 1000; id += 2) {
+            mIndex.setChecked(id * 31, false);
+        }
+        assertEquals(500, mIndex.size());
+        for (long id = 1; id <= 1000; id++) {
+            assertEquals(id % 2 == 0, mIndex.contains(id * 31));
+        }
+        assertEquals(500, mIndex.getIds().size());
+    }
+
+    @Test
+    public void retainAll() {
+        mIndex.addAll(Arrays.asList(1L, 2L, 5L, null));
+        mIndex.retainAll(new long[] {3, 2, 1});
+        assertEquals(2, mIndex.size());
+        assertTrue(mIndex.contains(1));
+        assertTrue(mIndex.contains(2));
+        assertFalse(mIndex.contains(5));
+    }
+
+    @Test
+    public void membership() {
+        GroupMembership membership = publishMembership(mContacts);
+
+        assertTrue(Arrays.equals(new long[] {1, 2}, getIds(membership.getContacts(0))));
+        assertTrue(Arrays.equals(new long[] {2, 3}, getIds(membership.getContacts(1))));
+        assertEquals(Arrays.asList(mGroupA, mGroupB), membership.getGroups(2));
+        assertEquals(Collections.singletonList(mGroupB), membership.getGroups(3));
+        assertTrue(membership.getGroups(4).isEmpty());
+
+        // the same members in a different order
+        List<ContactImpl> reversed = new ArrayList<>(mContacts);
+        Collections.reverse(reversed);
+        assertTrue(membership.hasSameMembers(GroupMembership.build(reversed, mGroupIdsById, mGroups)));
+        mGroupIdsById.remove(3L);
+        assertFalse(membership.hasSameMembers(GroupMembership.build(mContacts, mGroupIdsById, mGroups)));
+    }
+
+    @Test
+    public void groupsFollowContacts() {
+        // the checked contacts are counted when the membership is published
+        mIndex.setChecked(1, true);
+        publishMembership(mContacts);
+        assertTrue(mGroupA.hasCheckedContacts());
+        assertFalse(mGroupB.hasCheckedContacts());
+
+        mContacts.get(2).setChecked(true, true);
+        assertTrue(mGroupB.hasCheckedContacts());
+
+        mContacts.get(0).setChecked(false, true);
+        mContacts.get(2).setChecked(false, true);
+        assertFalse(mGroupA.hasCheckedContacts());
+        assertFalse(mGroupB.hasCheckedContacts());
+    }
+
+    @Test
+    public void checkGroup() {
+        publishMembership(mContacts);
+
+        assertTrue(mGroupA.setContactsChecked(true));
+        assertFalse(mGroupA.setContactsChecked(true));
+        assertTrue(mIndex.contains(1));
+        assertTrue(mIndex.contains(2));
+        assertFalse(mIndex.contains(3));
+        assertTrue(mContacts.get(1).isChecked());
+        // contact 2 is in group B too
+        assertTrue(mGroupB.hasCheckedContacts());
+
+        assertTrue(mGroupB.setContactsChecked(false));
+        assertFalse(mIndex.contains(2));
+        assertTrue(mGroupA.hasCheckedContacts());
+    }
+
+}